@@ -1,6 +1,7 @@
 plugins {
 java
 id("com.github.johnrengelman.shadow") version "8.1.1"
+id("me.champeau.jmh") version "0.7.2"
 }
 
 
@@ -26,6 +27,15 @@ dependencies {
     implementation("commons-codec:commons-codec:1.16.1")
     implementation("com.mysql:mysql-connector-j:8.4.0")
 
+    // бенчмарки запускаются вне сервера, поэтому Paper API нужен им в рантайме
+    jmh("io.papermc.paper:paper-api:1.21-R0.1-SNAPSHOT")
+
+    // тесты тоже вне сервера
+    testImplementation("io.papermc.paper:paper-api:1.21-R0.1-SNAPSHOT")
+    testImplementation(platform("org.junit:junit-bom:5.10.2"))
+    testImplementation("org.junit.jupiter:junit-jupiter")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+
 }
 
 
@@ -39,6 +49,19 @@ expand(
 }
 
 
+// ./gradlew jmh [-PjmhIncludes=Totp] — результаты в JSON для сравнения прогонов
+jmh {
+    resultFormat.set("JSON")
+    resultsFile.set(layout.buildDirectory.file("results/jmh/results.json"))
+    providers.gradleProperty("jmhIncludes").orNull?.let { includes.set(listOf(it)) }
+}
+
+
+tasks.test {
+    useJUnitPlatform()
+}
+
+
 tasks.shadowJar {
     archiveClassifier.set("")
 }
@@ -0,0 +1,53 @@
+package space.blockera.twofa.i18n;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/** Сборка сообщений из messages.yml плагина: одна строка с плейсхолдером и многострочный /2fa stats. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessagesBenchmark {
+    private Messages messages;
+    private Map<String, String> linked;
+    private Map<String, String> stats;
+
+    @Setup
+    public void setUp() throws Exception {
+        try (Reader reader = new InputStreamReader(Messages.class.getResourceAsStream("/messages.yml"), StandardCharsets.UTF_8)) {
+            messages = new Messages(YamlConfiguration.loadConfiguration(reader));
+        }
+        linked = Map.of("tg", "@blockera_player");
+        stats = new HashMap<>();
+        for (String key : List.of("users_hits", "users_misses", "users_size", "links_hits", "links_misses", "links_size",
+                "purged_challenges", "purged_sessions", "purged_devices", "purged_actions")) {
+            stats.put(key, "12345");
+        }
+    }
+
+    @Benchmark
+    public List<String> singleLine() {
+        return messages.render("tg.status.linked", linked);
+    }
+
+    @Benchmark
+    public List<String> statsList() {
+        return messages.render("stats", stats);
+    }
+
+    @Benchmark
+    public String plain() {
+        return messages.msg("blocked.chat");
+    }
+}
@@ -0,0 +1,46 @@
+package space.blockera.twofa.security;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/** Шифрование секрета при /2fa setup и расшифровка при каждой проверке кода. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CryptoBenchmark {
+    private static final String SECRET = "JBSWY3DPEHPK3PXPJBSWY3DPEHPK3PXP";
+
+    /** aes — ключ задан (ENC:), plaintext — без ключа (PLA:). */
+    @Param({"aes", "plaintext"})
+    public String mode;
+
+    private CryptoUtil crypto;
+    private byte[] stored;
+
+    @Setup
+    public void setUp() {
+        byte[] key = null;
+        if (mode.equals("aes")) {
+            key = new byte[32];
+            new SecureRandom().nextBytes(key);
+        }
+        crypto = new CryptoUtil(key, Logger.getLogger("CryptoBenchmark"));
+        stored = crypto.protect(SECRET);
+    }
+
+    @Benchmark
+    public byte[] protect() {
+        return crypto.protect(SECRET);
+    }
+
+    @Benchmark
+    public String reveal() {
+        return crypto.reveal(stored);
+    }
+}
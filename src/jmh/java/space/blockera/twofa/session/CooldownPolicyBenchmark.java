@@ -0,0 +1,71 @@
+package space.blockera.twofa.session;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/** Выбор правила кулдауна на входе: обход групп policy.cooldown.groups по пермишенам. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CooldownPolicyBenchmark {
+
+    @Param({"2", "20", "100"})
+    public int groups;
+
+    private SessionService.CooldownPolicy policy;
+    private Player firstGroup;
+    private Player lastGroup;
+    private Player noGroup;
+
+    @Setup
+    public void setUp() {
+        YamlConfiguration cfg = new YamlConfiguration();
+        cfg.set("policy.cooldown.enabled", true);
+        cfg.set("policy.cooldown.default.minutes", 1440);
+        List<Map<String, Object>> rules = new ArrayList<>();
+        for (int i = 0; i < groups; i++) {
+            rules.add(Map.of("permission", "blockera.twofa.cooldown.g" + i, "minutes", 60 + i, "per_ip", true));
+        }
+        cfg.set("policy.cooldown.groups", rules);
+        policy = SessionService.CooldownPolicy.fromConfig(cfg);
+        firstGroup = playerWith("blockera.twofa.cooldown.g0");
+        lastGroup = playerWith("blockera.twofa.cooldown.g" + (groups - 1));
+        noGroup = playerWith("other.permission");
+    }
+
+    /** Только hasPermission: остальное правилу не нужно. */
+    private static Player playerWith(String permission) {
+        return (Player) Proxy.newProxyInstance(Player.class.getClassLoader(), new Class<?>[]{Player.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "hasPermission" -> permission.equals(args[0]);
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> null;
+                });
+    }
+
+    @Benchmark
+    public SessionService.CooldownPolicy.CooldownRule firstGroup() {
+        return policy.resolve(firstGroup);
+    }
+
+    @Benchmark
+    public SessionService.CooldownPolicy.CooldownRule lastGroup() {
+        return policy.resolve(lastGroup);
+    }
+
+    @Benchmark
+    public SessionService.CooldownPolicy.CooldownRule defaultRule() {
+        return policy.resolve(noGroup);
+    }
+}
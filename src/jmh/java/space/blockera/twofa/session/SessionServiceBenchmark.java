@@ -0,0 +1,70 @@
+package space.blockera.twofa.session;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/** Проверки, которые слушатели делают на каждое движение, команду и сообщение в чате, — из многих потоков сразу. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class SessionServiceBenchmark {
+    private static final int PLAYERS = 1000;
+
+    private final SessionService sessions = new SessionService(120);
+    private final SessionService.CooldownPolicy.CooldownRule rule =
+            SessionService.CooldownPolicy.CooldownRule.remember("bench", 1440, true);
+    private final UUID[] players = new UUID[PLAYERS];
+    private final String[] ips = new String[PLAYERS];
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < PLAYERS; i++) {
+            players[i] = UUID.randomUUID();
+            ips[i] = "10.0." + (i / 256) + "." + (i % 256);
+            // половина игроков подтвердила вход, половина ждёт кода
+            sessions.markPending(players[i], rule, ips[i]);
+            if (i % 2 == 0) sessions.markVerified(players[i], ips[i]);
+        }
+    }
+
+    @Benchmark
+    public boolean isVerified() {
+        return sessions.isVerified(players[ThreadLocalRandom.current().nextInt(PLAYERS)]);
+    }
+
+    /** То, что SecurityListeners проверяет на каждое событие. */
+    @Benchmark
+    public boolean isLocked() {
+        return sessions.isLocked(players[ThreadLocalRandom.current().nextInt(PLAYERS)]);
+    }
+
+    @Benchmark
+    public boolean isWithinCooldown() {
+        int i = ThreadLocalRandom.current().nextInt(PLAYERS);
+        return sessions.isWithinCooldown(players[i], ips[i], rule);
+    }
+
+    /** Вход/подтверждение на фоне чтений: запись в те же карты. */
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(6)
+    public boolean mixedRead() {
+        return sessions.isVerified(players[ThreadLocalRandom.current().nextInt(PLAYERS)]);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(2)
+    public void mixedWrite() {
+        int i = ThreadLocalRandom.current().nextInt(PLAYERS);
+        sessions.markPending(players[i], rule, ips[i]);
+        sessions.markVerified(players[i], ips[i]);
+    }
+}
@@ -0,0 +1,69 @@
+package space.blockera.twofa.totp;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/** Проверка кода /2fa confirm: верный код, неверный (полный обход окна) и часы игрока со сдвигом. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TotpBenchmark {
+
+    @Param({"1", "3", "10"})
+    public int window;
+
+    private TotpService totp;
+    private String secret;
+    private String current;
+    private String skewed;
+    private String wrong;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        YamlConfiguration cfg = new YamlConfiguration();
+        cfg.set("security.totp.window_steps", window);
+        totp = new TotpService(cfg);
+        secret = totp.generateBase32Secret();
+    }
+
+    /** Коды живут period_seconds: пересчитываем на каждой итерации. */
+    @Setup(Level.Iteration)
+    public void codes() {
+        current = code(0);
+        skewed = code(window);
+        wrong = String.format("%06d", (Integer.parseInt(current) + 1) % 1_000_000);
+    }
+
+    private String code(int offset) {
+        int[] out = new int[1];
+        totp.fillCodes(secret, totp.currentStep() + offset, out);
+        return String.format("%06d", out[0]);
+    }
+
+    @Benchmark
+    public boolean verifyCurrent() {
+        return totp.verifyCode(secret, current);
+    }
+
+    @Benchmark
+    public boolean verifyWrong() {
+        return totp.verifyCode(secret, wrong);
+    }
+
+    /** Телефон спешит на window шагов, сдвиг не запомнен. */
+    @Benchmark
+    public int skewedWithoutDrift() {
+        return totp.matchOffset(secret, skewed, 0);
+    }
+
+    /** Тот же телефон, сдвиг из twofa_users.totp_drift. */
+    @Benchmark
+    public int skewedWithDrift() {
+        return totp.matchOffset(secret, skewed, window);
+    }
+}
@@ -1,26 +1,37 @@
 package space.blockera.twofa;
 
 import space.blockera.twofa.TwoFAMode;
-import com.zaxxer.hikari.HikariDataSource;
 import org.bukkit.Bukkit;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
 import org.bukkit.command.PluginCommand;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
 import org.bukkit.plugin.java.JavaPlugin;
 
 import space.blockera.twofa.commands.TwoFACommand;
 import space.blockera.twofa.i18n.Messages;
+import space.blockera.twofa.listeners.LoginGateListener;
+import space.blockera.twofa.listeners.LoginPrefetchListener;
 import space.blockera.twofa.listeners.SecurityListeners;
 import space.blockera.twofa.listeners.SecurityFreezeListener;
 import space.blockera.twofa.security.CryptoUtil;
+import space.blockera.twofa.security.KeyRotationJob;
+import space.blockera.twofa.session.LoginSnapshots;
 import space.blockera.twofa.session.SessionService;
+import space.blockera.twofa.session.SessionSnapshotStore;
 import space.blockera.twofa.session.TrustedDeviceService;
 import space.blockera.twofa.storage.ChallengeRepository;
-import space.blockera.twofa.storage.DataSourceFactory;
+import space.blockera.twofa.storage.LoginStateRepository;
+import space.blockera.twofa.storage.StorageExecutor;
+import space.blockera.twofa.storage.StorageProvider;
 import space.blockera.twofa.storage.TelegramLinkRepository;
 import space.blockera.twofa.storage.TelegramSessionRepository;
 import space.blockera.twofa.storage.UserRepository;
 import space.blockera.twofa.storage.TrustedDeviceRepository;
+import space.blockera.twofa.totp.ExpectedCodeCache;
 import space.blockera.twofa.totp.TotpService;
 
 // онлайн
@@ -33,15 +44,23 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.logging.Level;
 
 public class BlockEraTwoFAPlugin extends JavaPlugin {
 
-    private HikariDataSource dataSource;
+    private volatile StorageProvider storage;
+    private StorageExecutor storageExecutor;
     private UserRepository userRepository;
     private SessionService sessionService;
+    private SessionSnapshotStore sessionStore;
     private TotpService totpService;
+    private ExpectedCodeCache expectedCodes;
     private CryptoUtil crypto;
+    private volatile KeyRotationJob keyRotation;
     private TwoFACommand command;
     private Messages messages;
     private TelegramLinkRepository tgLinks;
@@ -52,6 +71,14 @@ public class BlockEraTwoFAPlugin extends JavaPlugin {
     private SecurityListeners securityListeners;
     private SecurityFreezeListener securityFreezeListener;
     private TrustedDeviceService trustedDeviceService;
+    private OnlineRepository onlineRepository;
+    private OnlineListeners onlineListeners;
+    private LoginStateRepository loginStates;
+    private LoginPrefetchListener loginPrefetch;
+    private LoginGateListener loginGate;
+    private final LoginSnapshots loginSnapshots = new LoginSnapshots();
+    /** /2fa reload ждёт подключения нового хранилища; только основной поток. */
+    private boolean reloading;
 
     @Override
     public void onEnable() {
@@ -60,165 +87,289 @@ public class BlockEraTwoFAPlugin extends JavaPlugin {
         mergeResourceDefaults("config.yml");
         mergeResourceDefaults("messages.yml");
 
-        reloadCore();
+        loadSettings(getConfig());
 
-        // команда
-        PluginCommand pc = getCommand("2fa");
-        if (pc == null) {
+        // кулдауны с прошлого запуска: иначе после рестарта 2FA у всех разом
+        SessionSnapshotStore.Settings persistence = SessionSnapshotStore.Settings.fromConfig(getConfig());
+        if (persistence.enabled()) {
+            this.sessionStore = new SessionSnapshotStore(getDataFolder().toPath().resolve(persistence.file()),
+                    persistence.compactRecords(), getLogger());
+            sessionStore.load(sessionService);
+            long flushTicks = persistence.flushSeconds() * 20L;
+            Bukkit.getScheduler().runTaskTimerAsynchronously(this, () -> sessionStore.flush(sessionService), flushTicks, flushTicks);
+        }
+
+        // истёкшие подтверждения, кулдауны и заранее посчитанные коды: состояние в памяти, от хранилища не зависит
+        Bukkit.getScheduler().runTaskTimerAsynchronously(this, () -> {
+            SessionService sessions = sessionService;
+            if (sessions != null) sessions.expireDue();
+            ExpectedCodeCache codes = expectedCodes;
+            if (codes != null) codes.sweep();
+        }, 20L, 20L);
+
+        if (getCommand("2fa") == null) {
             getLogger().severe("Command '2fa' отсутствует в plugin.yml или не попала в JAR");
             getServer().getPluginManager().disablePlugin(this);
             return;
         }
-        pc.setExecutor(command);
-        pc.setTabCompleter(command);
 
-        // слушатели безопасности
-        this.securityListeners = new SecurityListeners(this, userRepository, sessionService, trustedDeviceService, messages);
-        Bukkit.getPluginManager().registerEvents(securityListeners, this);
-        this.securityFreezeListener = new SecurityFreezeListener(this, tgLinks, telegramSessions, messages);
-        Bukkit.getPluginManager().registerEvents(securityFreezeListener, this);
+        // пока хранилище не готово, вход игроков с обязательной 2FA придерживается
+        this.loginGate = new LoginGateListener(this, messages);
+        Bukkit.getPluginManager().registerEvents(loginGate, this);
 
-        // онлайн: апдейт таблицы + обработчик очереди logout
-        OnlineRepository onlineRepo = new OnlineRepository(getDataSource());
-        Bukkit.getPluginManager().registerEvents(
-                new OnlineListeners(this, onlineRepo),
-                this
-        );
-
-        getLogger().info("BlockEraTwoFA включён.");
+        // пул, миграции и прогрев соединений — вне потока запуска сервера
+        bootstrapStorage();
+        getLogger().info("BlockEraTwoFA включён, хранилище подключается в фоне.");
     }
 
     @Override
     public void onDisable() {
-        if (dataSource != null) dataSource.close();
+        if (onlineListeners != null) onlineListeners.shutdown();
+        if (securityFreezeListener != null) securityFreezeListener.shutdown();
+        if (trustedDeviceService != null) trustedDeviceService.flushTouches();
+        if (sessionStore != null) sessionStore.close(sessionService);
+        if (storage != null) storage.close();
+    }
+
+    /** До готовности хранилища /2fa обслуживает сам плагин: TwoFACommand ещё не создан. */
+    @Override
+    public boolean onCommand(CommandSender sender, Command cmd, String label, String[] args) {
+        sender.sendMessage(messages.msg("storage.not-ready"));
+        return true;
     }
 
-    /** Переинициализация всего (вызывается из /2fa reload). */
-    public void reloadCore() {
+    /**
+     * Переинициализация всего (вызывается из /2fa reload). Новое хранилище открывается вне
+     * основного потока; прежнее закрывается только после успешного подключения, а при ошибке
+     * остаётся в работе с новыми настройками. Результат завершается в основном потоке.
+     */
+    public CompletableFuture<Void> reloadCore() {
+        if (reloading) return CompletableFuture.failedFuture(new IllegalStateException("перезагрузка уже выполняется"));
+        reloading = true;
         mergeResourceDefaults("config.yml");
         reloadConfig();
         FileConfiguration cfg = getConfig();
 
         mergeResourceDefaults("messages.yml");
+        loadSettings(cfg);
 
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        openStorageAsync(cfg).whenComplete((opened, ex) -> {
+            if (!isEnabled()) {
+                if (opened != null) opened.close();
+                return;
+            }
+            Bukkit.getScheduler().runTask(this, () -> {
+                reloading = false;
+                StorageProvider previous = storage;
+                TrustedDeviceService previousTrusted = trustedDeviceService;
+                attachStorage(ex == null ? opened : previous);
+                // отложенные last_used дописываем через старое хранилище, затем закрываем его — вне основного потока
+                Bukkit.getScheduler().runTaskAsynchronously(this, () -> {
+                    if (previousTrusted != null) previousTrusted.flushTouches();
+                    if (ex == null && previous != null) previous.close();
+                });
+                if (ex != null) done.completeExceptionally(ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex);
+                else done.complete(null);
+            });
+        });
+        return done;
+    }
+
+    /** Конфиг, сообщения, ключ шифрования и сервисы, не зависящие от БД. */
+    private void loadSettings(FileConfiguration cfg) {
         // messages.yml
         this.messages = new Messages(this);
 
-        if (dataSource != null) dataSource.close();
-        this.dataSource = DataSourceFactory.fromConfig(cfg);
-
-        // репозитории
-        this.userRepository = new UserRepository(dataSource, getLogger());
-        this.tgLinks = new TelegramLinkRepository(dataSource, getLogger());
-        this.challenges = new ChallengeRepository(dataSource, getLogger());
-        this.telegramSessions = new TelegramSessionRepository(dataSource, getLogger());
-        this.trustedDevicesRepository = new TrustedDeviceRepository(dataSource, getLogger());
-
         // ключ шифрования: ENV -> config.yml -> PLAINTEXT
         String envVar = cfg.getString("security.secret_encryption_key_env", "TWOFA_MASTER_KEY");
         String b64 = System.getenv(envVar);
         if (b64 == null || b64.isEmpty()) {
             b64 = cfg.getString("security.secret_encryption_key_b64", "");
         }
-        byte[] key = null;
+        int keyId = Math.max(0, Math.min(255, cfg.getInt("security.secret_encryption_key_id", 1)));
+        Map<Integer, byte[]> keys = new HashMap<>();
         if (b64 != null && !b64.isEmpty()) {
             try {
-                key = Base64.getDecoder().decode(b64);
+                keys.put(keyId, Base64.getDecoder().decode(b64));
             } catch (IllegalArgumentException ex) {
                 getLogger().warning("Некорректный Base64 ключ, секреты будут PLAINTEXT.");
             }
         } else {
             getLogger().warning("Ключ шифрования не задан — секреты будут PLAINTEXT.");
         }
-        this.crypto = new CryptoUtil(key, getLogger());
+        // прежние ключи: только для чтения, пока security.rotation переводит секреты на активный
+        ConfigurationSection previous = cfg.getConfigurationSection("security.previous_keys");
+        if (previous != null) {
+            for (String id : previous.getKeys(false)) {
+                String value = previous.getString(id, "");
+                if (value == null || value.isEmpty()) value = System.getenv(envVar + "_" + id);
+                try {
+                    int n = Integer.parseInt(id.trim());
+                    if (n < 0 || n > 255 || n == keyId || value == null || value.isEmpty()) throw new IllegalArgumentException();
+                    keys.put(n, Base64.getDecoder().decode(value));
+                } catch (IllegalArgumentException ex) {
+                    getLogger().warning("security.previous_keys." + id + ": нужен номер 0–255, отличный от активного, и Base64-ключ; пропущен.");
+                }
+            }
+        }
+        this.crypto = new CryptoUtil(keys, keyId, getLogger());
 
         // сервисы
         this.totpService = new TotpService(cfg);
-        this.sessionService = new SessionService(cfg);
+        if (this.expectedCodes != null) this.expectedCodes.clearAll();
+        this.expectedCodes = new ExpectedCodeCache(totpService, crypto, cfg);
+        // при reload состояние игроков сохраняется, меняются только настройки
+        if (this.sessionService == null) this.sessionService = new SessionService(cfg);
+        else this.sessionService.applyConfig(cfg);
+
+        if (this.loginGate != null) {
+            this.loginGate.setMessages(messages);
+            this.loginGate.reloadSettings();
+        }
+    }
+
+    /** Пул, миграции и прогрев соединений — в отдельном потоке, основной поток БД не ждёт. */
+    private CompletableFuture<StorageProvider> openStorageAsync(FileConfiguration cfg) {
+        return CompletableFuture.supplyAsync(() -> StorageProvider.open(this, cfg),
+                task -> new Thread(task, "BlockEraTwoFA-Bootstrap").start());
+    }
+
+    /** Фоновое подключение; при неудаче повтор через storage.bootstrap_retry_seconds. */
+    private void bootstrapStorage() {
+        FileConfiguration cfg = getConfig();
+        openStorageAsync(cfg)
+                .whenComplete((opened, ex) -> {
+                    if (!isEnabled()) {
+                        if (opened != null) opened.close();
+                        return;
+                    }
+                    Bukkit.getScheduler().runTask(this, () -> {
+                        if (ex != null) {
+                            long retry = Math.max(5L, cfg.getLong("storage.bootstrap_retry_seconds", 30L));
+                            getLogger().log(Level.SEVERE, "Хранилище недоступно, повтор через " + retry + " с", ex);
+                            Bukkit.getScheduler().runTaskLater(this, this::bootstrapStorage, retry * 20L);
+                            return;
+                        }
+                        attachStorage(opened);
+                        getLogger().info("Хранилище подключено, вход открыт.");
+                    });
+                });
+    }
+
+    /** Команда и слушатели поверх готового хранилища (storage.type). Основной поток. */
+    private void attachStorage(StorageProvider opened) {
+        FileConfiguration cfg = getConfig();
+        this.storage = opened;
+        this.storageExecutor = opened.executor();
+
+        // репозитории
+        this.userRepository = opened.users();
+        this.tgLinks = opened.telegramLinks();
+        this.challenges = opened.challenges();
+        this.telegramSessions = opened.telegramSessions();
+        this.trustedDevicesRepository = opened.trustedDevices();
+        this.onlineRepository = opened.online();
+        this.loginStates = opened.loginStates();
         this.trustedDeviceService = new TrustedDeviceService(trustedDevicesRepository, cfg);
+        this.keyRotation = new KeyRotationJob(userRepository, crypto, KeyRotationJob.Settings.fromConfig(cfg),
+                new File(getDataFolder(), cfg.getString("security.rotation.checkpoint_file", "key-rotation.yml")), getLogger());
 
         if (this.command == null) {
             this.command = new TwoFACommand(
                     this,
                     userRepository,
                     totpService,
+                    expectedCodes,
                     sessionService,
                     crypto,
                     messages,
                     tgLinks,
                     challenges,
-                    trustedDeviceService
+                    trustedDeviceService,
+                    storageExecutor
             );
+            PluginCommand pc = getCommand("2fa");
+            pc.setExecutor(command);
+            pc.setTabCompleter(command);
         } else {
             this.command.rewire(
                     userRepository,
                     totpService,
+                    expectedCodes,
                     sessionService,
                     crypto,
                     messages,
                     tgLinks,
                     challenges,
-                    trustedDeviceService
+                    trustedDeviceService,
+                    storageExecutor
             );
         }
         this.command.reloadSettings();
 
-        if (this.securityListeners != null) {
-            this.securityListeners.rewire(userRepository, sessionService, trustedDeviceService);
+        if (this.securityListeners == null) {
+            startListeners(cfg);
+        } else {
+            this.loginPrefetch.rewire(loginStates, userRepository, tgLinks);
+            this.securityListeners.rewire(userRepository, sessionService, trustedDeviceService, expectedCodes, storageExecutor);
             this.securityListeners.setMessages(messages);
             this.securityListeners.reloadSettings();
-        }
-        if (this.securityFreezeListener != null) {
-            this.securityFreezeListener.rewire(tgLinks, telegramSessions);
+            this.securityFreezeListener.rewire(tgLinks, telegramSessions, storageExecutor);
             this.securityFreezeListener.setMessages(messages);
             this.securityFreezeListener.reloadSettings();
+            this.onlineListeners.rewire(onlineRepository);
+            this.onlineListeners.reloadSettings();
         }
+        loginGate.open();
+    }
 
-        // создать таблицы онлайна/очереди, если их ещё нет
-        initOnlineSchema();
+    /** Первое подключение хранилища: слушатели и фоновые таймеры. */
+    private void startListeners(FileConfiguration cfg) {
+        // слушатели безопасности
+        this.loginPrefetch = new LoginPrefetchListener(loginStates, userRepository, tgLinks, loginSnapshots);
+        Bukkit.getPluginManager().registerEvents(loginPrefetch, this);
+        this.securityListeners = new SecurityListeners(this, userRepository, sessionService, trustedDeviceService, expectedCodes, storageExecutor, loginSnapshots, messages);
+        Bukkit.getPluginManager().registerEvents(securityListeners, this);
+        this.securityFreezeListener = new SecurityFreezeListener(this, tgLinks, telegramSessions, storageExecutor, loginSnapshots, messages);
+        Bukkit.getPluginManager().registerEvents(securityFreezeListener, this);
 
+        // онлайн: апдейт таблицы + обработчик очереди logout
+        this.onlineListeners = new OnlineListeners(this, onlineRepository);
+        Bukkit.getPluginManager().registerEvents(onlineListeners, this);
+
+        // зашедшие, пока хранилище подключалось (без обязательной 2FA), проходят проверку Telegram сейчас
+        for (Player online : Bukkit.getOnlinePlayers()) {
+            securityFreezeListener.checkOnJoin(online);
+        }
+
+        // очистка просроченных строк; интервал применяется после рестарта
+        long janitorInterval = Math.max(1L, cfg.getLong("storage.janitor.interval_minutes", 10L)) * 60L * 20L;
+        Bukkit.getScheduler().runTaskTimerAsynchronously(this, () -> storage.maintenance(this::isEnabled), 20L * 60L, janitorInterval);
+
+        // перешифровка секретов активным ключом; прежний экземпляр после reload останавливается между порциями
+        long rotationInterval = Math.max(1L, cfg.getLong("security.rotation.interval_seconds", 60L)) * 20L;
+        Bukkit.getScheduler().runTaskTimerAsynchronously(this, () -> {
+            KeyRotationJob job = keyRotation;
+            if (job != null) job.run(() -> isEnabled() && keyRotation == job);
+        }, rotationInterval, rotationInterval);
+
+        // отложенные отметки last_used доверенных устройств
+        long touchInterval = Math.max(1L, cfg.getLong("security.trusted_devices.touch_flush_seconds", 60L)) * 20L;
+        Bukkit.getScheduler().runTaskTimerAsynchronously(this, () -> {
+            TrustedDeviceService trusted = trustedDeviceService;
+            if (trusted != null) trusted.flushTouches();
+        }, touchInterval, touchInterval);
     }
 
     // ===== helpers =====
 
-    public HikariDataSource getDataSource() {
-        return dataSource;
+    public StorageProvider getStorage() {
+        return storage;
     }
 
-    /** Создание таблиц tg_online и tg_actions. */
-    private void initOnlineSchema() {
-        try (var c = dataSource.getConnection();
-             var st = c.createStatement()) {
-
-            st.execute("""
-                CREATE TABLE IF NOT EXISTS tg_online (
-                  uuid CHAR(36) PRIMARY KEY,
-                  name VARCHAR(32) NOT NULL,
-                  online TINYINT(1) NOT NULL DEFAULT 0,
-                  last_seen TIMESTAMP NULL,
-                  last_world VARCHAR(64) NULL,
-                  last_server VARCHAR(64) NULL,
-                  updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
-                    ON UPDATE CURRENT_TIMESTAMP,
-                  INDEX (online), INDEX (last_seen)
-                )
-            """);
-
-            st.execute("""
-                CREATE TABLE IF NOT EXISTS tg_actions (
-                  id BIGINT AUTO_INCREMENT PRIMARY KEY,
-                  action ENUM('LOGOUT') NOT NULL,
-                  player_uuid CHAR(36) NOT NULL,
-                  reason VARCHAR(200) NULL,
-                  created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
-                  processed_at TIMESTAMP NULL,
-                  INDEX (processed_at), INDEX (player_uuid)
-                )
-            """);
-
-        } catch (Exception e) {
-            getLogger().warning("Не удалось создать таблицы онлайна: " + e.getMessage());
-        }
+    public StorageExecutor getStorageExecutor() {
+        return storageExecutor;
     }
 
     private void mergeResourceDefaults(String resourcePath) {
@@ -262,7 +413,9 @@ public class BlockEraTwoFAPlugin extends JavaPlugin {
     public UserRepository getUserRepository() { return userRepository; }
     public SessionService getSessionService() { return sessionService; }
     public TotpService getTotpService() { return totpService; }
+    public ExpectedCodeCache getExpectedCodes() { return expectedCodes; }
     public CryptoUtil getCrypto() { return crypto; }
+    public KeyRotationJob getKeyRotation() { return keyRotation; }
     public Messages getMessages() { return messages; }
     public TelegramLinkRepository getTelegramLinks() { return tgLinks; }
     public ChallengeRepository getChallenges() { return challenges; }
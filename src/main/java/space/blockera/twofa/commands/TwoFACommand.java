@@ -13,9 +13,13 @@ import org.bukkit.plugin.Plugin;
 import space.blockera.twofa.BlockEraTwoFAPlugin;
 import space.blockera.twofa.i18n.Messages;
 import space.blockera.twofa.security.CryptoUtil;
+import space.blockera.twofa.security.KeyRotationJob;
+import space.blockera.twofa.security.RateLimiter;
 import space.blockera.twofa.session.SessionService;
 import space.blockera.twofa.session.TrustedDeviceService;
+import space.blockera.twofa.storage.StorageExecutor;
 import space.blockera.twofa.storage.UserRepository;
+import space.blockera.twofa.totp.ExpectedCodeCache;
 import space.blockera.twofa.totp.TotpService;
 import space.blockera.twofa.storage.ChallengeRepository;
 import space.blockera.twofa.storage.TelegramLinkRepository;
@@ -23,18 +27,23 @@ import space.blockera.twofa.listeners.SecurityListeners;
 
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
 
 public class TwoFACommand implements CommandExecutor, TabCompleter {
 
     private final Plugin plugin;
     private UserRepository repo;
     private TotpService totp;
+    private ExpectedCodeCache expectedCodes;
     private SessionService sessions;
     private CryptoUtil crypto;
     private Messages messages;
     private TelegramLinkRepository tgLinks;
     private ChallengeRepository challenges;
     private TrustedDeviceService trustedDevices;
+    private StorageExecutor io;
+    private RateLimiter limiter;
     private List<String> setupAliases = List.of("setup");
     private List<String> confirmAliases = List.of("confirm");
     private List<String> statusAliases = List.of("status");
@@ -44,47 +53,57 @@ public class TwoFACommand implements CommandExecutor, TabCompleter {
     private List<String> tgLinkAliases = List.of("link");
     private List<String> tgStatusAliases = List.of("tgstatus");
     private List<String> tgUnlinkAliases = List.of("unlinktelegram");
+    private List<String> statsAliases = List.of("stats");
 
     public TwoFACommand(Plugin plugin,
                         UserRepository repo,
                         TotpService totp,
+                        ExpectedCodeCache expectedCodes,
                         SessionService sessions,
                         CryptoUtil crypto,
                         Messages msg,
                         TelegramLinkRepository tgLinks,
                         ChallengeRepository challenges,
-                        TrustedDeviceService trustedDevices) {
+                        TrustedDeviceService trustedDevices,
+                        StorageExecutor io) {
         this.plugin = plugin;
         this.repo = repo;
         this.totp = totp;
+        this.expectedCodes = expectedCodes;
         this.sessions = sessions;
         this.crypto = crypto;
         this.messages = msg;
         this.tgLinks = tgLinks;
         this.challenges = challenges;
         this.trustedDevices = trustedDevices;
+        this.io = io;
         reloadSettings();
     }
 
     public void rewire(UserRepository repo,
                        TotpService totp,
+                       ExpectedCodeCache expectedCodes,
                        SessionService sessions,
                        CryptoUtil crypto,
                        Messages msg,
                        TelegramLinkRepository tgLinks,
                        ChallengeRepository challenges,
-                       TrustedDeviceService trustedDevices) {
+                       TrustedDeviceService trustedDevices,
+                       StorageExecutor io) {
         this.repo = repo;
         this.totp = totp;
+        this.expectedCodes = expectedCodes;
         this.sessions = sessions;
         this.crypto = crypto;
         this.messages = msg;
         this.tgLinks = tgLinks;
         this.challenges = challenges;
         this.trustedDevices = trustedDevices;
+        this.io = io;
     }
 
     public void reloadSettings() {
+        this.limiter = RateLimiter.fromConfig(plugin.getConfig());
         this.setupAliases = readAliases("commands.setup", "setup");
         this.confirmAliases = readAliases("commands.confirm", "confirm");
         this.statusAliases = readAliases("commands.status", "status");
@@ -94,6 +113,7 @@ public class TwoFACommand implements CommandExecutor, TabCompleter {
         this.tgLinkAliases = readAliases("commands.telegram_link", "link");
         this.tgStatusAliases = readAliases("commands.telegram_status", "tgstatus");
         this.tgUnlinkAliases = readAliases("commands.telegram_unlink", "unlinktelegram");
+        this.statsAliases = readAliases("commands.stats", "stats");
     }
 
     private List<String> readAliases(String path, String fallback) {
@@ -128,7 +148,8 @@ public class TwoFACommand implements CommandExecutor, TabCompleter {
                 "reload", primary(reloadAliases, "reload"),
                 "telegram_link", primary(tgLinkAliases, "link"),
                 "telegram_status", primary(tgStatusAliases, "tgstatus"),
-                "telegram_unlink", primary(tgUnlinkAliases, "unlinktelegram")
+                "telegram_unlink", primary(tgUnlinkAliases, "unlinktelegram"),
+                "stats", primary(statsAliases, "stats")
         );
     }
 
@@ -158,17 +179,32 @@ public class TwoFACommand implements CommandExecutor, TabCompleter {
                     return true;
                 }
                 if (plugin instanceof BlockEraTwoFAPlugin main) {
-                    try {
-                        main.reloadCore();
-                        rewire(main.getUserRepository(), main.getTotpService(), main.getSessionService(),
-                                main.getCrypto(), main.getMessages(),
-                                main.getTelegramLinks(), main.getChallenges(),
-                                main.getTrustedDeviceService());
+                    // хранилище подключается в фоне; ответ — в основном потоке, когда оно готово или не подключилось
+                    main.reloadCore().whenComplete((ok, ex) -> {
+                        if (ex != null) {
+                            sender.sendMessage(prefix + "Ошибка при перезагрузке, хранилище оставлено прежним: " + ex.getMessage());
+                            plugin.getLogger().log(Level.SEVERE, "/2fa reload: хранилище не подключено", ex);
+                            return;
+                        }
                         sender.sendMessage(messages.msg("reloaded"));
-                    } catch (Exception ex) {
-                        sender.sendMessage(prefix + "Ошибка при перезагрузке: " + ex.getMessage());
-                        ex.printStackTrace();
-                    }
+                    });
+                }
+                return true;
+        }
+
+        if (statsAliases.contains(sub)) {
+                if (!sender.hasPermission("blockera.twofa.admin")) { sender.sendMessage(messages.msg("no-perm")); return true; }
+                Map<String, String> vars = statsPlaceholders();
+                messages.send(sender, "stats", vars);
+                messages.send(sender, "stats-sessions", vars);
+                KeyRotationJob.Progress rotation = plugin instanceof BlockEraTwoFAPlugin main && main.getKeyRotation() != null
+                        ? main.getKeyRotation().progress() : null;
+                if (rotation != null) {
+                    vars.put("rotation_key", Integer.toString(rotation.targetKeyId()));
+                    vars.put("rotation_scanned", Long.toString(rotation.scanned()));
+                    vars.put("rotation_rewritten", Long.toString(rotation.rewritten()));
+                    vars.put("rotation_failed", Long.toString(rotation.failed()));
+                    messages.send(sender, rotation.done() ? "stats-rotation-done" : "stats-rotation", vars);
                 }
                 return true;
         }
@@ -179,61 +215,32 @@ public class TwoFACommand implements CommandExecutor, TabCompleter {
                     sender.sendMessage(messages.msg("only-ingame"));
                     return true;
                 }
+                if (rateLimited(p, RateLimiter.Action.LINK)) return true;
 
-                if (tgLinks.findByPlayer(p.getUniqueId()).isPresent()) {
-                    // уже привязан
-                    messages.send(p, "tg.alreadyLinked", helpPlaceholders());
-                    return true;
-                }
-
-                // генерим токен и TTL
-                String token = genToken16();
-                int ttlSec = plugin.getConfig().getInt("telegram.challenge_ttl_seconds", 600);
-                challenges.create(p.getUniqueId(), p.getName(), token,
-        Instant.ofEpochMilli(System.currentTimeMillis() + ttlSec * 1000L));
-
-
-                // берём имя бота и делаем глубокую ссылку
-                String botRaw = plugin.getConfig().getString("telegram.bot_username", "BlockEraAuthBot");
-                String bot = botRaw != null && botRaw.startsWith("@") ? botRaw.substring(1) : botRaw;
-                String linkTpl = plugin.getConfig().getString("telegram.link_template", "https://t.me/%s?start=%s");
-                String url = String.format(Locale.ROOT, linkTpl, bot, token);
-
-                // выводим готовое сообщение через Messages (подстановка {prefix}/{bot}/{token}/{url})
-                Map<String, String> vars = basePlaceholders();
-                vars.put("bot", "@" + bot);
-                vars.put("token", token);
-                vars.put("url", url);
-                messages.send(p, "tg.link.begin", vars);
-
-                // дополнительная кликабельная строка (приятная мелочь)
-                p.sendMessage(Component.text(" ")
-                        .append(Component.text("Открыть бота: ").append(Component.text("@" + bot)
-                                .clickEvent(ClickEvent.openUrl("https://t.me/" + bot))))
-                        .append(Component.text("  •  "))
-                        .append(Component.text("Вставить токен").clickEvent(ClickEvent.copyToClipboard(token)))
-                );
-
+                tgLinks.findByPlayerAsync(p.getUniqueId())
+                        .thenAcceptAsync(link -> beginTelegramLink(p, link.isPresent()), io.mainThread())
+                        .exceptionally(ex -> storageUnavailable(p));
                 return true;
         }
 
         if (tgStatusAliases.contains(sub)) {
                 if (!(sender instanceof Player p)) { sender.sendMessage(messages.msg("only-ingame")); return true; }
-                var link = tgLinks.findByPlayer(p.getUniqueId());
-                if (link.isPresent()) {
-                    Map<String, String> vars = basePlaceholders();
-                    vars.put("tg", "@" + link.get().telegramUsername());
-                    messages.send(p, "tg.status.linked", vars);
-                } else {
-                    messages.send(p, "tg.status.notLinked", helpPlaceholders());
-                }
+                tgLinks.findByPlayerAsync(p.getUniqueId()).thenAcceptAsync(link -> {
+                    if (link.isPresent()) {
+                        Map<String, String> vars = basePlaceholders();
+                        vars.put("tg", "@" + link.get().telegramUsername());
+                        messages.send(p, "tg.status.linked", vars);
+                    } else {
+                        messages.send(p, "tg.status.notLinked", helpPlaceholders());
+                    }
+                }, io.mainThread()).exceptionally(ex -> storageUnavailable(p));
                 return true;
         }
 
         if (tgUnlinkAliases.contains(sub)) {
                 if (!(sender instanceof Player p)) { sender.sendMessage(messages.msg("only-ingame")); return true; }
-                tgLinks.deleteByPlayer(p.getUniqueId());
-                messages.send(p, "tg.unlinked", helpPlaceholders());
+                tgLinks.deleteByPlayerAsync(p.getUniqueId())
+                        .thenRunAsync(() -> messages.send(p, "tg.unlinked", helpPlaceholders()), io.mainThread());
                 return true;
         }
 
@@ -245,7 +252,11 @@ public class TwoFACommand implements CommandExecutor, TabCompleter {
                 String qrTpl = plugin.getConfig().getString("ui.qr_link_template");
                 String qr = (qrTpl != null && !qrTpl.isEmpty()) ? totp.buildQrLink(otpauth, qrTpl) : null;
 
-                repo.upsertSecret(p.getUniqueId(), crypto.protect(base32), false);
+                byte[] protectedSecret = crypto.protect(base32);
+                // старые коды больше не подходят; новые считаются после записи, уже в I/O-пуле
+                expectedCodes.discard(p.getUniqueId());
+                expectedCodes.prepare(p.getUniqueId(), repo.upsertSecretAsync(p.getUniqueId(), protectedSecret, false)
+                        .thenApply(v -> Optional.of(protectedSecret)));
                 p.sendMessage(messages.msg("setup-created"));
                 if (qr != null) {
                     p.sendMessage(Component.text(messages.msg("qr-link"))
@@ -261,67 +272,46 @@ public class TwoFACommand implements CommandExecutor, TabCompleter {
         if (confirmAliases.contains(sub)) {
                 if (!(sender instanceof Player p)) { sender.sendMessage(messages.msg("only-ingame")); return true; }
                 if (args.length < 2) { p.sendMessage(messages.msg("usage-confirm")); return true; }
-                var enc = repo.getSecret(p.getUniqueId());
-                if (enc.isEmpty()) { p.sendMessage(messages.msg("need-setup-first")); return true; }
-                String base32 = crypto.reveal(enc.get());
-                if (totp.verifyCode(base32, args[1])) {
-                    repo.setEnabled(p.getUniqueId(), true);
-                    sessions.markVerified(p.getUniqueId(), SessionService.currentIp(p));
-                    if (trustedDevices != null) {
-                        trustedDevices.remember(p);
-                    }
-                    p.sendMessage(messages.msg("confirm-ok"));
-                    if (trustedDevices != null && trustedDevices.isEnabled()) {
-                        Map<String, String> vars = basePlaceholders();
-                        vars.put("days", Long.toString(Math.max(1L, trustedDevices.ttlDays())));
-                        messages.send(p, "trusted.remembered", vars);
+                if (rateLimited(p, RateLimiter.Action.CONFIRM)) return true;
+                checkCode(p, args[1]).thenAcceptAsync(check -> {
+                    switch (check) {
+                        case NO_SECRET -> p.sendMessage(messages.msg("need-setup-first"));
+                        case INVALID -> p.sendMessage(messages.msg("confirm-bad"));
+                        case UNAVAILABLE -> storageUnavailable(p);
+                        case VALID -> onConfirmed(p);
                     }
-                    Bukkit.getScheduler().runTask(plugin, () -> {
-                        Player pl = Bukkit.getPlayer(p.getUniqueId());
-                        if (pl != null) {
-                            if (plugin instanceof BlockEraTwoFAPlugin twoFAPlugin) {
-                                SecurityListeners listeners = twoFAPlugin.getSecurityListeners();
-                                if (listeners != null) {
-                                    listeners.onVerified(pl);
-                                    return;
-                                }
-                            }
-                            var cfg = plugin.getConfig();
-                            pl.setWalkSpeed((float) cfg.getDouble("ui.unlock.walk_speed", 0.2));
-                            pl.setFlySpeed((float) cfg.getDouble("ui.unlock.fly_speed", 0.1));
-                            pl.setInvulnerable(cfg.getBoolean("ui.unlock.invulnerable", false));
-                            pl.setCollidable(cfg.getBoolean("ui.unlock.collidable", true));
-                        }
-                    });
-                } else {
-                    p.sendMessage(messages.msg("confirm-bad"));
-                }
+                }, io.mainThread());
                 return true;
         }
 
         if (statusAliases.contains(sub)) {
                 if (!(sender instanceof Player p)) { sender.sendMessage(messages.msg("only-ingame")); return true; }
-                boolean enabled = repo.isEnabled(p.getUniqueId());
-                boolean verified = sessions.isVerified(p.getUniqueId());
-                p.sendMessage(messages.fmt("status", enabled, verified));
+                repo.isEnabledAsync(p.getUniqueId()).thenAcceptAsync(enabled -> {
+                    boolean verified = sessions.isVerified(p.getUniqueId());
+                    p.sendMessage(messages.fmt("status", enabled, verified));
+                }, io.mainThread()).exceptionally(ex -> storageUnavailable(p));
                 return true;
         }
 
         if (disableAliases.contains(sub)) {
                 if (!(sender instanceof Player p)) { sender.sendMessage(messages.msg("only-ingame")); return true; }
                 if (args.length < 2) { p.sendMessage(messages.msg("usage-disable")); return true; }
-                var enc = repo.getSecret(p.getUniqueId());
-                if (enc.isEmpty()) { p.sendMessage(messages.msg("not-setup")); return true; }
-                String base32 = crypto.reveal(enc.get());
-                if (totp.verifyCode(base32, args[1])) {
-                    repo.upsertSecret(p.getUniqueId(), null, false);
-                    if (trustedDevices != null) {
-                        trustedDevices.forget(p.getUniqueId());
+                if (rateLimited(p, RateLimiter.Action.DISABLE)) return true;
+                checkCode(p, args[1]).thenAcceptAsync(check -> {
+                    switch (check) {
+                        case NO_SECRET -> p.sendMessage(messages.msg("not-setup"));
+                        case INVALID -> p.sendMessage(messages.msg("disable-bad"));
+                        case UNAVAILABLE -> storageUnavailable(p);
+                        case VALID -> {
+                            expectedCodes.discard(p.getUniqueId());
+                            repo.upsertSecretAsync(p.getUniqueId(), null, false);
+                            if (trustedDevices != null) {
+                                trustedDevices.forget(p.getUniqueId());
+                            }
+                            p.sendMessage(messages.msg("disabled"));
+                        }
                     }
-                    p.sendMessage(messages.msg("disabled"));
-                } else {
-                    p.sendMessage(messages.msg("disable-bad"));
-                }
+                }, io.mainThread());
                 return true;
         }
 
@@ -341,7 +331,8 @@ public class TwoFACommand implements CommandExecutor, TabCompleter {
                     return true;
                 }
 
-                repo.upsertSecret(target.getUniqueId(), null, false);
+                expectedCodes.discard(target.getUniqueId());
+                repo.upsertSecretAsync(target.getUniqueId(), null, false);
                 sessions.clear(target.getUniqueId());
                 if (trustedDevices != null) {
                     trustedDevices.forget(target.getUniqueId());
@@ -365,6 +356,139 @@ public class TwoFACommand implements CommandExecutor, TabCompleter {
         return true;
     }
 
+    /** До любого запроса к БД и криптографии; при отказе игрок получает rate-limited. */
+    private boolean rateLimited(Player p, RateLimiter.Action action) {
+        if (limiter.tryAcquire(action, p.getUniqueId(), SessionService.currentIp(p))) return false;
+        p.sendMessage(messages.msg("rate-limited"));
+        return true;
+    }
+
+    /** БД не ответила, а в кэше об игроке ничего нет: не отвечать «не привязан» / «выключена». */
+    private Void storageUnavailable(Player p) {
+        io.mainThread().execute(() -> p.sendMessage(messages.msg("storage.unavailable")));
+        return null;
+    }
+
+    private void beginTelegramLink(Player p, boolean alreadyLinked) {
+        if (alreadyLinked) {
+            // уже привязан
+            messages.send(p, "tg.alreadyLinked", helpPlaceholders());
+            return;
+        }
+
+        // генерим токен и TTL
+        String token = genToken16();
+        int ttlSec = plugin.getConfig().getInt("telegram.challenge_ttl_seconds", 600);
+        challenges.createAsync(p.getUniqueId(), p.getName(), token,
+                Instant.ofEpochMilli(System.currentTimeMillis() + ttlSec * 1000L));
+
+        // берём имя бота и делаем глубокую ссылку
+        String botRaw = plugin.getConfig().getString("telegram.bot_username", "BlockEraAuthBot");
+        String bot = botRaw != null && botRaw.startsWith("@") ? botRaw.substring(1) : botRaw;
+        String linkTpl = plugin.getConfig().getString("telegram.link_template", "https://t.me/%s?start=%s");
+        String url = String.format(Locale.ROOT, linkTpl, bot, token);
+
+        // выводим готовое сообщение через Messages (подстановка {prefix}/{bot}/{token}/{url})
+        Map<String, String> vars = basePlaceholders();
+        vars.put("bot", "@" + bot);
+        vars.put("token", token);
+        vars.put("url", url);
+        messages.send(p, "tg.link.begin", vars);
+
+        // дополнительная кликабельная строка (приятная мелочь)
+        p.sendMessage(Component.text(" ")
+                .append(Component.text("Открыть бота: ").append(Component.text("@" + bot)
+                        .clickEvent(ClickEvent.openUrl("https://t.me/" + bot))))
+                .append(Component.text("  •  "))
+                .append(Component.text("Вставить токен").clickEvent(ClickEvent.copyToClipboard(token)))
+        );
+    }
+
+    private Map<String, String> statsPlaceholders() {
+        Map<String, String> vars = basePlaceholders();
+        var users = repo.cacheStats();
+        vars.put("users_hits", Long.toString(users.hits()));
+        vars.put("users_misses", Long.toString(users.misses()));
+        vars.put("users_size", Integer.toString(users.size()));
+        var links = tgLinks.cacheStats();
+        vars.put("links_hits", Long.toString(links.hits()));
+        vars.put("links_misses", Long.toString(links.misses()));
+        vars.put("links_size", Integer.toString(links.size()));
+        Map<String, Long> purged = plugin instanceof BlockEraTwoFAPlugin main && main.getStorage() != null
+                ? main.getStorage().purgedCounts() : Map.of();
+        vars.put("purged_challenges", Long.toString(purged.getOrDefault("tg_challenges", 0L)));
+        vars.put("purged_sessions", Long.toString(purged.getOrDefault("tg_sessions", 0L)));
+        vars.put("purged_devices", Long.toString(purged.getOrDefault("twofa_trusted_devices", 0L)));
+        vars.put("purged_actions", Long.toString(purged.getOrDefault("tg_actions", 0L)));
+        SessionService.Gauges gauges = sessions.gauges();
+        vars.put("sessions_players", Integer.toString(gauges.players()));
+        vars.put("sessions_verified", Long.toString(gauges.verified()));
+        vars.put("sessions_pending", Long.toString(gauges.pending()));
+        vars.put("sessions_cooldowns", Long.toString(gauges.cooldowns()));
+        return vars;
+    }
+
+    /**
+     * Сначала — заранее посчитанные коды (ExpectedCodeCache); без них секрет читается
+     * и проверяется в I/O-пуле: в основном потоке нет ни запроса, ни AES/HMAC.
+     */
+    private CompletableFuture<CodeCheck> checkCode(Player p, String code) {
+        UUID u = p.getUniqueId();
+        ExpectedCodeCache.Check precomputed = expectedCodes.check(u, code);
+        switch (precomputed.result()) {
+            case MATCH -> {
+                repo.setDriftAsync(u, precomputed.offset());
+                return CompletableFuture.completedFuture(CodeCheck.VALID);
+            }
+            case MISMATCH -> { return CompletableFuture.completedFuture(CodeCheck.INVALID); }
+            case UNKNOWN -> { }
+        }
+        return repo.getSecretAsync(u)
+                .thenApply(enc -> {
+                    if (enc.isEmpty()) return CodeCheck.NO_SECRET;
+                    String base32 = crypto.reveal(enc.get());
+                    // строка уже в кэше после getSecret: сдвиг часов игрока без второго запроса
+                    int offset = totp.matchOffset(base32, code, repo.getDrift(u));
+                    if (offset == TotpService.NO_MATCH) return CodeCheck.INVALID;
+                    repo.setDrift(u, offset);
+                    return CodeCheck.VALID;
+                })
+                .exceptionally(ex -> {
+                    // БД или breaker недоступны — это не «неверный код»
+                    plugin.getLogger().warning("Проверка кода 2FA не удалась: " + ex.getMessage());
+                    return CodeCheck.UNAVAILABLE;
+                });
+    }
+
+    private void onConfirmed(Player p) {
+        if (!p.isOnline()) return;
+        repo.setEnabledAsync(p.getUniqueId(), true);
+        sessions.markVerified(p.getUniqueId(), SessionService.currentIp(p));
+        if (trustedDevices != null) {
+            trustedDevices.remember(p);
+        }
+        p.sendMessage(messages.msg("confirm-ok"));
+        if (trustedDevices != null && trustedDevices.isEnabled()) {
+            Map<String, String> vars = basePlaceholders();
+            vars.put("days", Long.toString(Math.max(1L, trustedDevices.ttlDays())));
+            messages.send(p, "trusted.remembered", vars);
+        }
+        if (plugin instanceof BlockEraTwoFAPlugin twoFAPlugin) {
+            SecurityListeners listeners = twoFAPlugin.getSecurityListeners();
+            if (listeners != null) {
+                listeners.onVerified(p);
+                return;
+            }
+        }
+        var cfg = plugin.getConfig();
+        p.setWalkSpeed((float) cfg.getDouble("ui.unlock.walk_speed", 0.2));
+        p.setFlySpeed((float) cfg.getDouble("ui.unlock.fly_speed", 0.1));
+        p.setInvulnerable(cfg.getBoolean("ui.unlock.invulnerable", false));
+        p.setCollidable(cfg.getBoolean("ui.unlock.collidable", true));
+    }
+
+    private enum CodeCheck { NO_SECRET, VALID, INVALID, UNAVAILABLE }
+
     @Override
     public List<String> onTabComplete(CommandSender sender, Command command, String alias, String[] args) {
         if (args.length == 1) {
@@ -378,6 +502,7 @@ public class TwoFACommand implements CommandExecutor, TabCompleter {
             suggestions.addAll(tgLinkAliases);
             suggestions.addAll(tgStatusAliases);
             suggestions.addAll(tgUnlinkAliases);
+            suggestions.addAll(statsAliases);
             return new ArrayList<>(suggestions);
         }
         return Collections.emptyList();
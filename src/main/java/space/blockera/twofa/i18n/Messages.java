@@ -19,6 +19,12 @@ public class Messages {
         reload();
     }
 
+    /** Готовая конфигурация без плагина и файла (бенчмарки); reload() недоступен. */
+    Messages(FileConfiguration cfg) {
+        this.plugin = null;
+        this.cfg = cfg;
+    }
+
     public void reload() {
         File file = new File(plugin.getDataFolder(), "messages.yml");
         if (!file.exists()) {
@@ -44,10 +50,12 @@ public class Messages {
                 "usage-confirm","need-setup-first","confirm-ok","confirm-bad","trusted.remembered",
                 "status","usage-disable","usage-force-disable","not-setup",
                 "disabled","disable-bad","force-disabled","force-disabled-player",
-                "force-disable-not-found",
+                "force-disable-not-found","stats","stats-sessions","stats-rotation","stats-rotation-done","storage.not-ready","storage.login-not-ready",
+                "storage.unavailable","storage.login-unavailable","rate-limited",
                 "unknown","pending.prompt","blocked.command","blocked.chat",
                 "tg.link.begin","tg.status.linked","tg.status.notLinked","tg.unlinked",
-                "tg.freeze.pending","tg.freeze.unlocked","tg.freeze.kick-pending","tg.freeze.kick-denied"
+                "tg.freeze.pending","tg.freeze.unlocked","tg.freeze.kick-pending","tg.freeze.kick-denied",
+                "tg.logout.kick"
         };
     }
 
@@ -64,7 +72,8 @@ public class Messages {
                     "{prefix}&7/2fa {telegram_link} &f- привязать Telegram",
                     "{prefix}&7/2fa {telegram_status} &f- статус Telegram",
                     "{prefix}&7/2fa {telegram_unlink} &f- отвязать Telegram",
-                    "{prefix}&7/2fa {reload} &f- перезагрузить конфиг"
+                    "{prefix}&7/2fa {reload} &f- перезагрузить конфиг",
+                    "{prefix}&7/2fa {stats} &f- статистика кэша и хранилища (админ)"
             );
             case "no-perm" -> "&cНедостаточно прав.";
             case "reloaded" -> "&aКонфиг и подключения перезагружены.";
@@ -87,6 +96,19 @@ public class Messages {
             case "force-disabled" -> "{prefix}&a2FA отключена для {player}.";
             case "force-disabled-player" -> "{prefix}&cАдминистратор отключил вашу 2FA. Настройте заново через /2fa {setup}.";
             case "force-disable-not-found" -> "{prefix}&cИгрок {player} не найден или ни разу не заходил.";
+            case "stats" -> List.of(
+                    "{prefix}&fКэш twofa_users: &a{users_hits}&f попаданий, &c{users_misses}&f промахов, записей: &7{users_size}",
+                    "{prefix}&fКэш telegram_links: &a{links_hits}&f попаданий, &c{links_misses}&f промахов, записей: &7{links_size}",
+                    "{prefix}&fОчищено строк: &7tg_challenges &a{purged_challenges}&7, tg_sessions &a{purged_sessions}&7, twofa_trusted_devices &a{purged_devices}&7, tg_actions &a{purged_actions}"
+            );
+            case "stats-sessions" -> "{prefix}&fСессии в памяти: игроков &7{sessions_players}&f, подтверждено &a{sessions_verified}&f, ждут кода &e{sessions_pending}&f, кулдаунов &7{sessions_cooldowns}";
+            case "stats-rotation" -> "{prefix}&fПерешифровка на ключ &7{rotation_key}&f: просмотрено &a{rotation_scanned}&f, перешифровано &a{rotation_rewritten}&f, не расшифровано &c{rotation_failed}";
+            case "stats-rotation-done" -> "{prefix}&fПерешифровка на ключ &7{rotation_key}&f завершена: перешифровано &a{rotation_rewritten}&f, не расшифровано &c{rotation_failed}";
+            case "storage.not-ready" -> "&eХранилище 2FA ещё подключается, попробуйте через несколько секунд.";
+            case "storage.login-not-ready" -> "&eСервер ещё запускается, зайдите через несколько секунд.";
+            case "rate-limited" -> "&cСлишком много попыток, подождите немного.";
+            case "storage.unavailable" -> "&cХранилище 2FA временно недоступно, попробуйте позже.";
+            case "storage.login-unavailable" -> "&cХранилище 2FA временно недоступно, зайдите через минуту.";
             case "unknown" -> "&cНеизвестная подкоманда.";
             case "pending.prompt" -> "{prefix}&fВведите &a{confirm}&f из приложения.";
             case "blocked.command" -> "{prefix}&cДоступ запрещён до ввода кода. Используйте &a{confirm}";
@@ -104,6 +126,7 @@ public class Messages {
             case "tg.freeze.unlocked" -> "{prefix}&aВход подтверждён. Удачной игры!";
             case "tg.freeze.kick-pending" -> "{prefix}&cНе подтвержден вход в Telegram.";
             case "tg.freeze.kick-denied" -> "{prefix}&cВход отклонён через Telegram.";
+            case "tg.logout.kick" -> "&eВы вышли из игры через Telegram.";
             default -> "&c<missing message>";
         };
     }
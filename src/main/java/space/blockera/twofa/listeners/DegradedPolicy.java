@@ -0,0 +1,18 @@
+package space.blockera.twofa.listeners;
+
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.util.Locale;
+
+/** storage.breaker.degraded_policy: решение при входе, когда хранилище не ответило, а об игроке ничего не известно. */
+enum DegradedPolicy {
+    /** Пускать без проверки. */
+    FAIL_OPEN,
+    /** Не пускать игроков с обязательной 2FA. */
+    FAIL_CLOSED;
+
+    static DegradedPolicy fromConfig(FileConfiguration cfg) {
+        String value = cfg.getString("storage.breaker.degraded_policy", "fail_closed").trim().toLowerCase(Locale.ROOT);
+        return value.equals("fail_open") ? FAIL_OPEN : FAIL_CLOSED;
+    }
+}
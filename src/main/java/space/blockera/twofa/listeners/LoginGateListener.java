@@ -0,0 +1,69 @@
+package space.blockera.twofa.listeners;
+
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerLoginEvent;
+import org.bukkit.plugin.Plugin;
+import space.blockera.twofa.i18n.Messages;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Пока хранилище подключается в фоне, вход придерживается в потоке pre-login
+ * (storage.login_gate.hold_seconds), а игрокам с обязательной 2FA, которые так и не
+ * дождались, вход отклоняется с просьбой зайти чуть позже.
+ */
+public class LoginGateListener implements Listener {
+    private final Plugin plugin;
+    private final CompletableFuture<Void> ready = new CompletableFuture<>();
+    private volatile Messages messages;
+    private volatile long holdMillis;
+    private volatile String requiredPerm;
+
+    public LoginGateListener(Plugin plugin, Messages messages) {
+        this.plugin = plugin;
+        this.messages = messages;
+        reloadSettings();
+    }
+
+    public void setMessages(Messages messages) { this.messages = messages; }
+
+    public void reloadSettings() {
+        this.holdMillis = Math.max(0L, plugin.getConfig().getLong("storage.login_gate.hold_seconds", 10L)) * 1000L;
+        this.requiredPerm = plugin.getConfig().getString("security.policy.required_permission", "blockera.twofa.required");
+    }
+
+    /** Хранилище готово: дальше слушатель ничего не делает. */
+    public void open() {
+        ready.complete(null);
+    }
+
+    public boolean isReady() {
+        return ready.isDone();
+    }
+
+    @EventHandler(priority = EventPriority.LOWEST)
+    public void onPreLogin(AsyncPlayerPreLoginEvent e) {
+        if (ready.isDone() || holdMillis <= 0) return;
+        try {
+            ready.get(holdMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException ignored) {
+            // права ещё неизвестны — решение примем в PlayerLoginEvent
+        }
+    }
+
+    @EventHandler(priority = EventPriority.HIGH)
+    public void onLogin(PlayerLoginEvent e) {
+        if (ready.isDone() || e.getResult() != PlayerLoginEvent.Result.ALLOWED) return;
+        String perm = requiredPerm;
+        if (perm == null || perm.isEmpty() || !e.getPlayer().hasPermission(perm)) return;
+        e.disallow(PlayerLoginEvent.Result.KICK_OTHER, messages.msg("storage.login-not-ready"));
+    }
+}
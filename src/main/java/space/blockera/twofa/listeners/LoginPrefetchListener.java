@@ -0,0 +1,67 @@
+package space.blockera.twofa.listeners;
+
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerLoginEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import space.blockera.twofa.session.LoginSnapshots;
+import space.blockera.twofa.storage.LoginStateRepository;
+import space.blockera.twofa.storage.LoginStateRepository.LoginSnapshot;
+import space.blockera.twofa.storage.TelegramLinkRepository;
+import space.blockera.twofa.storage.UserRepository;
+
+import java.util.Optional;
+
+/**
+ * Предзагрузка состояния 2FA до входа: запрос выполняется в потоке pre-login,
+ * поэтому время основного потока на join не зависит от задержки БД.
+ */
+public class LoginPrefetchListener implements Listener {
+    private final LoginSnapshots snapshots;
+    private LoginStateRepository repository;
+    private UserRepository users;
+    private TelegramLinkRepository links;
+
+    public LoginPrefetchListener(LoginStateRepository repository, UserRepository users, TelegramLinkRepository links, LoginSnapshots snapshots) {
+        this.repository = repository;
+        this.users = users;
+        this.links = links;
+        this.snapshots = snapshots;
+    }
+
+    public void rewire(LoginStateRepository repository, UserRepository users, TelegramLinkRepository links) {
+        this.repository = repository;
+        this.users = users;
+        this.links = links;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPreLogin(AsyncPlayerPreLoginEvent e) {
+        if (e.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) return;
+        String ip = e.getAddress() != null ? e.getAddress().getHostAddress() : null;
+        long userStamp = users.cacheStamp(e.getUniqueId());
+        long linkStamp = links.cacheStamp(e.getUniqueId());
+        LoginSnapshot snapshot = repository.load(e.getUniqueId(), ip);
+        if (snapshot != null) {
+            snapshots.put(snapshot);
+            // первые /2fa confirm и /2fa tgstatus после входа уже не пойдут в БД
+            users.prime(snapshot.playerUuid(), snapshot.enabled(), snapshot.secret(), snapshot.totpDrift(), userStamp);
+            links.prime(snapshot.playerUuid(), Optional.ofNullable(snapshot.link()), linkStamp);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onLogin(PlayerLoginEvent e) {
+        // вход отклонён другим плагином — PlayerQuitEvent не будет
+        if (e.getResult() != PlayerLoginEvent.Result.ALLOWED) {
+            snapshots.remove(e.getPlayer().getUniqueId());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent e) {
+        snapshots.remove(e.getPlayer().getUniqueId());
+    }
+}
@@ -0,0 +1,118 @@
+package space.blockera.twofa.listeners;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import space.blockera.twofa.storage.OnlineRepository;
+import space.blockera.twofa.storage.OnlineRepository.LogoutAction;
+import space.blockera.twofa.storage.OnlineRepository.LogoutClaim;
+import space.blockera.twofa.storage.PresenceBuffer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+/**
+ * Обработчик очереди tg_actions (LOGOUT от бота). Строки забираются пачками через
+ * FOR UPDATE SKIP LOCKED и только для игроков этого сервера, поэтому бэкенды сети не
+ * дерутся за одни и те же строки. Курсор по id делает холостой опрос дешёвым, а
+ * периодический проход с нуля подбирает строки, пропущенные, пока они были чужими.
+ * Медленный опрос не пересекается со следующим: тот пропускается.
+ */
+class LogoutQueueWorker implements Runnable {
+    private final Plugin plugin;
+    private final PresenceBuffer presence;
+    private final String server;
+    private final Logger log;
+
+    private volatile OnlineRepository repo;
+    private volatile int batchSize;
+    private volatile long orphanGraceSeconds;
+    private volatile int rescanEvery;
+    private volatile String kickMessage;
+
+    /** Курсор и счётчик меняет только опрос, захвативший флаг. */
+    private final AtomicBoolean polling = new AtomicBoolean();
+    private volatile long cursor;
+    private int pollsSinceRescan;
+
+    LogoutQueueWorker(Plugin plugin, OnlineRepository repo, PresenceBuffer presence, String server) {
+        this.plugin = plugin;
+        this.repo = repo;
+        this.presence = presence;
+        this.server = server;
+        this.log = plugin.getLogger();
+    }
+
+    void rewire(OnlineRepository repo) {
+        this.repo = repo;
+        this.cursor = 0L;
+    }
+
+    void configure(int batchSize, long orphanGraceSeconds, int rescanEvery, String kickMessage) {
+        this.batchSize = Math.max(1, batchSize);
+        this.orphanGraceSeconds = Math.max(1L, orphanGraceSeconds);
+        this.rescanEvery = Math.max(1, rescanEvery);
+        this.kickMessage = kickMessage;
+    }
+
+    @Override
+    public void run() {
+        if (!polling.compareAndSet(false, true)) return;
+        try {
+            poll();
+        } finally {
+            polling.set(false);
+        }
+    }
+
+    private void poll() {
+        if (++pollsSinceRescan >= rescanEvery) {
+            pollsSinceRescan = 0;
+            cursor = 0L;
+        }
+        try {
+            while (true) {
+                LogoutClaim claim = repo.claimLogouts(server, cursor, batchSize, orphanGraceSeconds, action ->
+                        // игрок мог только что перейти на другой сервер, а tg_online ещё не обновился
+                        presence.isOnline(action.playerUuid()) || action.settled());
+                if (claim.isEmpty()) return;
+
+                long maxId = cursor;
+                long minDeferred = Long.MAX_VALUE;
+                for (LogoutAction a : claim.acked()) maxId = Math.max(maxId, a.id());
+                for (LogoutAction a : claim.deferred()) minDeferred = Math.min(minDeferred, a.id());
+                kick(claim.acked());
+
+                if (minDeferred != Long.MAX_VALUE) {
+                    cursor = Math.min(maxId, minDeferred - 1);
+                    return; // отложенные посмотрим в следующем опросе
+                }
+                cursor = maxId;
+                if (claim.acked().size() < batchSize) return;
+            }
+        } catch (Exception e) {
+            log.warning("tg_actions: " + e.getMessage());
+        }
+    }
+
+    private void kick(List<LogoutAction> actions) {
+        if (actions.isEmpty() || !plugin.isEnabled()) return;
+        List<UUID> targets = new ArrayList<>(actions.size());
+        for (LogoutAction a : actions) {
+            if (presence.isOnline(a.playerUuid())) targets.add(a.playerUuid());
+        }
+        if (targets.isEmpty()) return;
+        String message = kickMessage;
+        Bukkit.getScheduler().runTask(plugin, () -> {
+            for (UUID u : targets) {
+                Player p = Bukkit.getPlayer(u);
+                if (p != null && p.isOnline()) {
+                    p.kickPlayer(message);
+                }
+            }
+        });
+    }
+}
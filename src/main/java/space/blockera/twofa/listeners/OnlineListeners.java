@@ -9,75 +9,87 @@ import org.bukkit.event.player.*;
 import org.bukkit.scheduler.BukkitRunnable;
 import space.blockera.twofa.BlockEraTwoFAPlugin;
 import space.blockera.twofa.storage.OnlineRepository;
-
-import java.sql.Connection;
-import java.util.UUID;
+import space.blockera.twofa.storage.PresenceBuffer;
 
 public class OnlineListeners implements Listener {
     private final BlockEraTwoFAPlugin plugin;
-    private final OnlineRepository repo;
+    private OnlineRepository repo;
     private final String serverName;
+    private final PresenceBuffer presence;
+    private final LogoutQueueWorker logoutWorker;
 
     public OnlineListeners(BlockEraTwoFAPlugin plugin, OnlineRepository repo) {
         this.plugin = plugin;
         this.repo = repo;
-        this.serverName = Bukkit.getServer().getName(); // или возьми из config.yml
-        startHeartbeat();     // периодическое обновление last_seen/online
+        this.serverName = resolveServerId();
+        this.presence = new PresenceBuffer(repo, serverName, plugin.getLogger());
+        this.logoutWorker = new LogoutQueueWorker(plugin, repo, presence, serverName);
+        reloadSettings();
+        for (Player online : Bukkit.getOnlinePlayers()) {
+            presence.markOnline(online.getUniqueId(), online.getName(), online.getWorld().getName());
+        }
+        startPresenceFlush(); // пачечная запись tg_online вместо запроса на каждое событие
         startLogoutWorker();  // обработчик очереди tg_actions
     }
 
+    public void rewire(OnlineRepository repo) {
+        this.repo = repo;
+        this.presence.rewire(repo);
+        this.logoutWorker.rewire(repo);
+    }
+
+    public void reloadSettings() {
+        presence.configure(
+                plugin.getConfig().getInt("presence.batch_size", 200),
+                plugin.getConfig().getLong("presence.heartbeat_seconds", 30L));
+        logoutWorker.configure(
+                plugin.getConfig().getInt("presence.actions.batch_size", 50),
+                plugin.getConfig().getLong("presence.actions.orphan_grace_seconds", 90L),
+                plugin.getConfig().getInt("presence.actions.rescan_every_polls", 30),
+                plugin.getMessages().msg("tg.logout.kick"));
+    }
+
+    /** last_server в tg_online: presence.server_id или имя:порт, чтобы бэкенды сети различались. */
+    private String resolveServerId() {
+        String id = plugin.getConfig().getString("presence.server_id", "");
+        if (id != null && !id.isBlank()) return id.trim();
+        return Bukkit.getServer().getName() + ":" + Bukkit.getServer().getPort();
+    }
+
+    /** Отметить всех offline и дописать буфер (из onDisable, до закрытия пула). */
+    public void shutdown() {
+        presence.shutdown();
+    }
+
     @EventHandler
     public void onJoin(PlayerJoinEvent e) {
         Player p = e.getPlayer();
-        try {
-            repo.upsertOnline(p.getUniqueId(), p.getName(), true,
-                    p.getWorld().getName(), serverName);
-        } catch (Exception ignored) {}
+        presence.markOnline(p.getUniqueId(), p.getName(), p.getWorld().getName());
     }
 
     @EventHandler
     public void onQuit(PlayerQuitEvent e) {
-        try { repo.markOffline(e.getPlayer().getUniqueId()); } catch (Exception ignored) {}
+        Player p = e.getPlayer();
+        presence.markOffline(p.getUniqueId(), p.getName(), p.getWorld().getName());
     }
 
     @EventHandler
     public void onChangeWorld(PlayerChangedWorldEvent e) {
         Player p = e.getPlayer();
-        try {
-            repo.upsertOnline(p.getUniqueId(), p.getName(), true,
-                    p.getWorld().getName(), serverName);
-        } catch (Exception ignored) {}
+        presence.markOnline(p.getUniqueId(), p.getName(), p.getWorld().getName());
     }
 
-    private void startHeartbeat() {
+    private void startPresenceFlush() {
+        long interval = Math.max(20L, plugin.getConfig().getLong("presence.flush_interval_ticks", 100L));
         new BukkitRunnable() {
             @Override public void run() {
-                for (Player p : Bukkit.getOnlinePlayers()) {
-                    try {
-                        repo.upsertOnline(p.getUniqueId(), p.getName(), true,
-                                p.getWorld().getName(), serverName);
-                    } catch (Exception ignored) {}
-                }
+                presence.flush();
             }
-        }.runTaskTimerAsynchronously(plugin, 20L * 30, 20L * 30); // каждые 30 сек
+        }.runTaskTimerAsynchronously(plugin, interval, interval);
     }
 
     private void startLogoutWorker() {
-        new BukkitRunnable() {
-            @Override public void run() {
-                try (Connection c = plugin.getDataSource().getConnection()) {
-                    var rs = repo.fetchPendingLogout(c);
-                    while (rs.next()) {
-                        long id = rs.getLong("id");
-                        UUID u = UUID.fromString(rs.getString("player_uuid"));
-                        Player p = Bukkit.getPlayer(u);
-                        if (p != null && p.isOnline()) {
-                            p.kickPlayer("Вы вышли из игры через Telegram.");
-                        }
-                        repo.markProcessed(id);
-                    }
-                } catch (Exception ignored) {}
-            }
-        }.runTaskTimerAsynchronously(plugin, 20L * 2, 20L * 2); // каждые 2 сек
+        long interval = Math.max(20L, plugin.getConfig().getLong("presence.actions.poll_interval_ticks", 40L));
+        Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, logoutWorker, interval, interval);
     }
 }
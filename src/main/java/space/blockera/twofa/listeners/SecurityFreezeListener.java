@@ -10,19 +10,26 @@ import org.bukkit.event.inventory.InventoryClickEvent;
 import org.bukkit.event.block.BlockBreakEvent;
 import org.bukkit.event.block.BlockPlaceEvent;
 import org.bukkit.plugin.Plugin;
-import org.bukkit.scheduler.BukkitRunnable;
+import space.blockera.twofa.session.LoginSnapshots;
+import space.blockera.twofa.storage.LoginStateRepository.LoginSnapshot;
+import space.blockera.twofa.storage.StorageExecutor;
 import space.blockera.twofa.storage.TelegramLinkRepository;
 import space.blockera.twofa.storage.TelegramSessionRepository;
 import space.blockera.twofa.i18n.Messages;
 
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class SecurityFreezeListener implements Listener {
     private final Plugin plugin;
     private TelegramLinkRepository links;
     private TelegramSessionRepository sessions;
-    private final Set<UUID> frozen = new HashSet<>();
+    private StorageExecutor io;
+    private final LoginSnapshots snapshots;
+    private final Set<UUID> frozen = ConcurrentHashMap.newKeySet();
+    private final TelegramApprovalPoller approvals;
     private Messages messages;
     private float freezeWalkSpeed;
     private float freezeFlySpeed;
@@ -34,20 +41,31 @@ public class SecurityFreezeListener implements Listener {
     private boolean unlockCollidable;
     private String kickPendingMessage;
     private String kickDeniedMessage;
+    private String requiredPerm;
+    private DegradedPolicy degradedPolicy;
 
-    public SecurityFreezeListener(Plugin plugin, TelegramLinkRepository links, TelegramSessionRepository sessions, Messages messages) {
+    public SecurityFreezeListener(Plugin plugin, TelegramLinkRepository links, TelegramSessionRepository sessions, StorageExecutor io, LoginSnapshots snapshots, Messages messages) {
         this.plugin = plugin;
+        this.snapshots = snapshots;
         this.links = links;
         this.sessions = sessions;
+        this.io = io;
         this.messages = messages;
+        this.approvals = new TelegramApprovalPoller(plugin, sessions, io, this::onDecision);
         reloadSettings();
     }
 
     public void setMessages(Messages messages) { this.messages = messages; }
 
-    public void rewire(TelegramLinkRepository links, TelegramSessionRepository sessions) {
+    public void rewire(TelegramLinkRepository links, TelegramSessionRepository sessions, StorageExecutor io) {
         this.links = links;
         this.sessions = sessions;
+        this.io = io;
+        approvals.rewire(sessions, io);
+    }
+
+    public void shutdown() {
+        approvals.shutdown();
     }
 
     public void reloadSettings() {
@@ -61,6 +79,9 @@ public class SecurityFreezeListener implements Listener {
         this.unlockCollidable = plugin.getConfig().getBoolean("telegram.freeze.unlock.collidable", true);
         this.kickPendingMessage = messages.msg("tg.freeze.kick-pending");
         this.kickDeniedMessage = messages.msg("tg.freeze.kick-denied");
+        this.requiredPerm = plugin.getConfig().getString("security.policy.required_permission", "blockera.twofa.required");
+        this.degradedPolicy = DegradedPolicy.fromConfig(plugin.getConfig());
+        approvals.reloadSettings();
     }
 
     private void applyFreeze(Player p) {
@@ -84,53 +105,67 @@ public class SecurityFreezeListener implements Listener {
 
     @EventHandler(priority = EventPriority.MONITOR)
     public void onJoin(PlayerJoinEvent e) {
-        if (!plugin.getConfig().getBoolean("telegram.auth_on_join", true)) return;
+        checkOnJoin(e.getPlayer());
+    }
 
-        Player p = e.getPlayer();
-        var link = links.findByPlayer(p.getUniqueId());
-        if (link.isEmpty()) return; // не привязан — не требуем
+    /** Проверка Telegram при входе; также для тех, кто зашёл, пока хранилище подключалось. */
+    public void checkOnJoin(Player p) {
+        if (!plugin.getConfig().getBoolean("telegram.auth_on_join", true)) return;
+        if (frozen.contains(p.getUniqueId())) return;
 
+        UUID u = p.getUniqueId();
         long cooldown = plugin.getConfig().getLong("telegram.cooldown_minutes", 60);
-        if (sessions.isCooldownOk(p.getUniqueId(), cooldown)) {
-            return; // недавно подтверждал — доверяем
-        }
-
         long kickAfter = plugin.getConfig().getLong("telegram.kick_after_seconds", 120);
-        var expires = Instant.now().plusSeconds(kickAfter);
-        sessions.createPending(
-                p.getUniqueId(),
-                expires,
-                p.getAddress() != null ? p.getAddress().getAddress().getHostAddress() : null
-        );
-
-        applyFreeze(p);
-
-        // плановый кик
-        Bukkit.getScheduler().runTaskLater(plugin, () -> {
-            if (frozen.contains(p.getUniqueId())) {
-                p.kickPlayer(kickPendingMessage);
-            }
-        }, kickAfter * 20L);
-
-        // периодическая проверка одобрения (каждые 10 тиков ~ 0.5 сек)
-        new BukkitRunnable() {
-            @Override public void run() {
-                var ok = sessions.isApproved(p.getUniqueId());
-                if (ok.isPresent()) {
-                    cancel();
-                    if (ok.get()) removeFreeze(p);
-                    else p.kickPlayer(kickDeniedMessage);
-                    return;
-                }
-                if (!p.isOnline()) cancel();
-            }
-        }.runTaskTimer(plugin, 10L, 10L);
+        String ip = p.getAddress() != null ? p.getAddress().getAddress().getHostAddress() : null;
+
+        LoginSnapshot snapshot = snapshots.get(u);
+        CompletableFuture<Boolean> check = snapshot != null
+                ? CompletableFuture.completedFuture(!snapshot.telegramLinked() || snapshot.telegramCooldownOk(cooldown))
+                : links.findByPlayerAsync(u)
+                        .thenCompose(link -> link.isEmpty()
+                                ? CompletableFuture.completedFuture(true)  // не привязан — не требуем
+                                : sessions.isCooldownOkAsync(u, cooldown)); // недавно подтверждал — доверяем
+        check.thenAcceptAsync(trusted -> {
+                    if (trusted || !p.isOnline()) return;
+                    applyFreeze(p);
+
+                    // плановый кик
+                    Bukkit.getScheduler().runTaskLater(plugin, () -> {
+                        if (frozen.contains(u)) {
+                            p.kickPlayer(kickPendingMessage);
+                        }
+                    }, kickAfter * 20L);
+
+                    sessions.createPendingAsync(u, Instant.now().plusSeconds(kickAfter), ip)
+                            .thenRun(() -> approvals.watch(u));
+                }, io.mainThread())
+                .exceptionally(ex -> {
+                    plugin.getLogger().warning("Проверка Telegram при входе не удалась (" + p.getName() + "): " + ex.getMessage());
+                    // привязка неизвестна: по fail_closed не пускаем тех, для кого 2FA обязательна
+                    if (degradedPolicy == DegradedPolicy.FAIL_CLOSED) {
+                        io.mainThread().execute(() -> {
+                            if (p.isOnline() && p.hasPermission(requiredPerm)) {
+                                p.kickPlayer(messages.msg("storage.login-unavailable"));
+                            }
+                        });
+                    }
+                    return null;
+                });
+    }
+
+    /** Решение из tg_sessions, уже в основном потоке. */
+    private void onDecision(UUID u, boolean approved) {
+        Player p = Bukkit.getPlayer(u);
+        if (p == null || !p.isOnline()) return;
+        if (approved) removeFreeze(p);
+        else p.kickPlayer(kickDeniedMessage);
     }
 
     @EventHandler
     public void onQuit(PlayerQuitEvent e) {
         // подчистим, если вдруг остался замороженным
         frozen.remove(e.getPlayer().getUniqueId());
+        approvals.unwatch(e.getPlayer().getUniqueId());
     }
 
     // Блокируем активность «замороженных»
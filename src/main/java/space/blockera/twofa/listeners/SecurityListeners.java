@@ -10,16 +10,21 @@ import org.bukkit.event.player.*;
 import org.bukkit.plugin.Plugin;
 import org.bukkit.potion.PotionEffect;
 import org.bukkit.potion.PotionEffectType;
+import space.blockera.twofa.session.LoginSnapshots;
 import space.blockera.twofa.session.SessionService;
+import space.blockera.twofa.storage.LoginStateRepository.LoginSnapshot;
+import space.blockera.twofa.storage.StorageExecutor;
 import space.blockera.twofa.storage.UserRepository;
 import space.blockera.twofa.i18n.Messages;
 import space.blockera.twofa.session.TrustedDeviceService;
+import space.blockera.twofa.totp.ExpectedCodeCache;
 
 import java.util.Set;
 import java.util.UUID;
 import java.util.HashSet;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public class SecurityListeners implements Listener {
     private final Plugin plugin;
@@ -27,6 +32,9 @@ public class SecurityListeners implements Listener {
     private SessionService sessions;
     private Messages messages;
     private TrustedDeviceService trustedDevices;
+    private ExpectedCodeCache expectedCodes;
+    private StorageExecutor io;
+    private final LoginSnapshots snapshots;
     private String requiredPerm;
     private Set<String> allowedWhenPending;
     private float freezeWalkSpeed;
@@ -38,6 +46,7 @@ public class SecurityListeners implements Listener {
     private boolean unlockInvulnerable;
     private boolean unlockCollidable;
     private String confirmPlaceholder;
+    private DegradedPolicy degradedPolicy;
     private PotionEffectType freezeEffectType;
     private int freezeEffectAmplifier;
     private boolean freezeEffectAmbient;
@@ -45,21 +54,26 @@ public class SecurityListeners implements Listener {
     private boolean freezeEffectIcon;
     private int freezeEffectDurationTicks;
 
-    public SecurityListeners(Plugin plugin, UserRepository repo, SessionService sessions, TrustedDeviceService trustedDevices, Messages messages) {
+    public SecurityListeners(Plugin plugin, UserRepository repo, SessionService sessions, TrustedDeviceService trustedDevices, ExpectedCodeCache expectedCodes, StorageExecutor io, LoginSnapshots snapshots, Messages messages) {
         this.plugin = plugin;
+        this.snapshots = snapshots;
         this.repo = repo;
         this.sessions = sessions;
         this.trustedDevices = trustedDevices;
+        this.expectedCodes = expectedCodes;
+        this.io = io;
         this.messages = messages;
         reloadSettings();
     }
 
     public void setMessages(Messages messages) { this.messages = messages; }
 
-    public void rewire(UserRepository repo, SessionService sessions, TrustedDeviceService trustedDevices) {
+    public void rewire(UserRepository repo, SessionService sessions, TrustedDeviceService trustedDevices, ExpectedCodeCache expectedCodes, StorageExecutor io) {
         this.repo = repo;
         this.sessions = sessions;
         this.trustedDevices = trustedDevices;
+        this.expectedCodes = expectedCodes;
+        this.io = io;
     }
 
     public void reloadSettings() {
@@ -95,6 +109,7 @@ public class SecurityListeners implements Listener {
             }
         }
         this.confirmPlaceholder = "/2fa " + confirmAlias + " <код>";
+        this.degradedPolicy = DegradedPolicy.fromConfig(plugin.getConfig());
 
         if (plugin.isEnabled()) {
             Bukkit.getScheduler().runTask(plugin, () -> {
@@ -114,34 +129,64 @@ public class SecurityListeners implements Listener {
     public void onJoin(PlayerJoinEvent e) {
         Player p = e.getPlayer();
         UUID u = p.getUniqueId();
-        boolean must = p.hasPermission(requiredPerm);
-        boolean enabled = repo.isEnabled(u);
-        if (!must || !enabled) {
-            return;
-        }
-
-        if (trustedDevices != null && trustedDevices.isTrusted(p)) {
-            sessions.markTrusted(u);
+        if (!p.hasPermission(requiredPerm) || sessions.isVerified(u)) {
             return;
         }
 
         var rule = sessions.resolveRule(p);
         String ip = SessionService.currentIp(p);
-        if (sessions.isWithinCooldown(u, ip, rule)) {
-            sessions.markTrusted(u);
+        sessions.markPending(u, rule, ip);
+
+        LoginSnapshot snapshot = snapshots.get(u);
+        if (snapshot != null) {
+            JoinDecision decision = !snapshot.enabled() ? JoinDecision.NOT_REQUIRED
+                    : trustedDevices != null && trustedDevices.isTrusted(p, snapshot) ? JoinDecision.TRUSTED
+                    : JoinDecision.CHECK_COOLDOWN;
+            applyJoinDecision(p, decision, rule, ip);
             return;
         }
 
-        if (!sessions.isVerified(u)) {
-            sessions.markPending(u, rule, ip);
-            freeze(p);
-            messages.send(p, "pending.prompt", Map.of("confirm", confirmPlaceholder));
+        // снимка нет (сразу после /2fa reload или БД не ответила в pre-login): идём в БД из I/O-пула,
+        // до ответа игрок заблокирован; при недоступной БД репозиторий отвечает из кэша
+        CompletableFuture<Boolean> trusted = trustedDevices != null
+                ? trustedDevices.isTrustedAsync(p)
+                : CompletableFuture.completedFuture(false);
+        repo.isEnabledAsync(u)
+                .thenCombine(trusted, (enabled, isTrusted) -> !enabled ? JoinDecision.NOT_REQUIRED
+                        : isTrusted ? JoinDecision.TRUSTED : JoinDecision.CHECK_COOLDOWN)
+                .exceptionally(ex -> {
+                    plugin.getLogger().warning("Проверка 2FA при входе не удалась (" + p.getName() + "): " + ex.getMessage());
+                    return degradedPolicy == DegradedPolicy.FAIL_OPEN ? JoinDecision.NOT_REQUIRED : JoinDecision.UNAVAILABLE;
+                })
+                .thenAcceptAsync(decision -> applyJoinDecision(p, decision, rule, ip), io.mainThread());
+    }
+
+    private void applyJoinDecision(Player p, JoinDecision decision, SessionService.CooldownPolicy.CooldownRule rule, String ip) {
+        UUID u = p.getUniqueId();
+        if (!p.isOnline() || !sessions.isPending(u)) {
+            return;
+        }
+        switch (decision) {
+            case NOT_REQUIRED -> sessions.clearPending(u);
+            case TRUSTED -> sessions.markTrusted(u);
+            case CHECK_COOLDOWN -> {
+                if (sessions.isWithinCooldown(u, ip, rule)) {
+                    sessions.markTrusted(u);
+                    return;
+                }
+                freeze(p);
+                messages.send(p, "pending.prompt", Map.of("confirm", confirmPlaceholder));
+                // код введут в ближайшие минуты: секрет из кэша, расшифровка и HMAC — заранее в I/O-пуле
+                expectedCodes.prepare(u, repo.getSecretAsync(u));
+            }
+            case UNAVAILABLE -> p.kickPlayer(messages.msg("storage.login-unavailable"));
         }
     }
 
+    private enum JoinDecision { NOT_REQUIRED, TRUSTED, CHECK_COOLDOWN, UNAVAILABLE }
+
     private boolean isLocked(Player p) {
-        UUID u = p.getUniqueId();
-        return sessions.isPending(u) && !sessions.isVerified(u);
+        return sessions.isLocked(p.getUniqueId());
     }
 
     private void freeze(Player p) {
@@ -161,7 +206,11 @@ public class SecurityListeners implements Listener {
     }
 
     @EventHandler
-    public void onQuit(PlayerQuitEvent e) { sessions.clear(e.getPlayer().getUniqueId()); }
+    public void onQuit(PlayerQuitEvent e) {
+        sessions.clear(e.getPlayer().getUniqueId());
+        expectedCodes.discard(e.getPlayer().getUniqueId());
+        if (trustedDevices != null) trustedDevices.evict(e.getPlayer().getUniqueId());
+    }
 
     @EventHandler
     public void onMove(PlayerMoveEvent e) {
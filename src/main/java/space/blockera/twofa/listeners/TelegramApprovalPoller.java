@@ -0,0 +1,111 @@
+package space.blockera.twofa.listeners;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+import space.blockera.twofa.storage.StorageExecutor;
+import space.blockera.twofa.storage.TelegramSessionRepository;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Один асинхронный опрос tg_sessions на всех ожидающих подтверждения игроков:
+ * раз в telegram.poll_interval_ticks уходит один запрос с IN (...), решения
+ * передаются в основной поток. Пока ждать некого, таймер засыпает всё дольше
+ * (до telegram.poll_idle_max_ticks), а первый же новый игрок будит его сразу.
+ */
+public class TelegramApprovalPoller {
+    private final Plugin plugin;
+    private final BiConsumer<UUID, Boolean> onDecision;
+    private final Set<UUID> pending = ConcurrentHashMap.newKeySet();
+    private final Object scheduleLock = new Object();
+
+    private volatile TelegramSessionRepository sessions;
+    private volatile StorageExecutor io;
+    private volatile long intervalTicks;
+    private volatile long idleMaxTicks;
+
+    private BukkitTask task;
+    private long delayTicks;
+
+    /** @param onDecision вызывается в основном потоке: (игрок, одобрено) */
+    public TelegramApprovalPoller(Plugin plugin, TelegramSessionRepository sessions, StorageExecutor io,
+                                  BiConsumer<UUID, Boolean> onDecision) {
+        this.plugin = plugin;
+        this.sessions = sessions;
+        this.io = io;
+        this.onDecision = onDecision;
+        reloadSettings();
+    }
+
+    public void rewire(TelegramSessionRepository sessions, StorageExecutor io) {
+        this.sessions = sessions;
+        this.io = io;
+    }
+
+    public void reloadSettings() {
+        this.intervalTicks = Math.max(1L, plugin.getConfig().getLong("telegram.poll_interval_ticks", 40L));
+        this.idleMaxTicks = Math.max(intervalTicks, plugin.getConfig().getLong("telegram.poll_idle_max_ticks", 400L));
+    }
+
+    public void watch(UUID uuid) {
+        pending.add(uuid);
+        synchronized (scheduleLock) {
+            // спим с большой задержкой — будим, чтобы не ждать лишние секунды
+            if (task == null || delayTicks > intervalTicks) {
+                reschedule(intervalTicks);
+            }
+        }
+    }
+
+    public void unwatch(UUID uuid) {
+        pending.remove(uuid);
+    }
+
+    public void shutdown() {
+        synchronized (scheduleLock) {
+            if (task != null) task.cancel();
+            task = null;
+        }
+        pending.clear();
+    }
+
+    private void poll() {
+        long next = intervalTicks;
+        try {
+            if (pending.isEmpty()) {
+                synchronized (scheduleLock) {
+                    next = Math.min(idleMaxTicks, Math.max(intervalTicks, delayTicks * 2));
+                }
+                return;
+            }
+            List<UUID> batch = List.copyOf(pending);
+            Map<UUID, Boolean> decisions = sessions.findDecisions(batch);
+            if (!decisions.isEmpty()) {
+                io.mainThread().execute(() -> decisions.forEach((uuid, approved) -> {
+                    if (pending.remove(uuid)) onDecision.accept(uuid, approved);
+                }));
+            }
+        } catch (RuntimeException e) {
+            // БД недоступна (или открыт предохранитель) — ожидающие игроки дождутся следующего опроса
+            plugin.getLogger().warning("tg_sessions: " + e.getMessage());
+        } finally {
+            synchronized (scheduleLock) {
+                reschedule(next);
+            }
+        }
+    }
+
+    private void reschedule(long delay) {
+        if (task != null) task.cancel();
+        task = null;
+        if (!plugin.isEnabled()) return;
+        delayTicks = delay;
+        task = Bukkit.getScheduler().runTaskLaterAsynchronously(plugin, this::poll, delay);
+    }
+}
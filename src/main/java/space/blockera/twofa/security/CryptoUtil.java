@@ -1,57 +1,189 @@
 package space.blockera.twofa.security;
 
 import javax.crypto.Cipher;
-import javax.crypto.KeyGenerator;
-import javax.crypto.SecretKey;
 import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
 import java.security.SecureRandom;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Map;
 import java.util.logging.Logger;
 
+/**
+ * Шифрование секретов TOTP (AES-256-GCM). Новые значения — двоичный конверт прямо в VARBINARY:
+ * [версия 1][id ключа][IV 12][шифртекст + тег 16], заголовок входит в AAD. Старые текстовые
+ * ENC:/PLA: и значения без префикса по-прежнему читаются.
+ * Ключей может быть несколько: пишет активный, читается любой из кольца по id из конверта
+ * (пока KeyRotationJob переводит таблицу на новый ключ).
+ */
 public class CryptoUtil {
-    private final byte[] key; // может быть null -> PLAINTEXT режим
+    private static final byte ENVELOPE_V1 = 1;
+    private static final int HEADER_BYTES = 2;
+    private static final int IV_BYTES = 12;
+    private static final int TAG_BITS = 128;
+    private static final int MIN_ENVELOPE = HEADER_BYTES + IV_BYTES + TAG_BITS / 8;
+
+    /** Cipher.getInstance дорогой и не потокобезопасный: по экземпляру на поток I/O-пула. */
+    private static final ThreadLocal<Cipher> CIPHERS = ThreadLocal.withInitial(() -> {
+        try {
+            return Cipher.getInstance("AES/GCM/NoPadding");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES/GCM недоступен", e);
+        }
+    });
+
+    /** Ключи по id; null — ключа с таким id нет. */
+    private final SecretKeySpec[] ring = new SecretKeySpec[256];
+    private final SecretKeySpec keySpec; // null -> PLAINTEXT режим
+    private final byte keyId;
     private final Logger log;
     private static final SecureRandom RNG = new SecureRandom();
 
-    public CryptoUtil(byte[] key, Logger log) { this.key = key; this.log = log; }
+    public CryptoUtil(byte[] key, Logger log) { this(key, 1, log); }
+
+    /** @param keyId пишется в конверт (security.secret_encryption_key_id, 0–255) */
+    public CryptoUtil(byte[] key, int keyId, Logger log) {
+        this(key == null ? Map.of() : Map.of(keyId, key), keyId, log);
+    }
+
+    /**
+     * @param keys        кольцо: id (0–255) -> ключ; прежние ключи только для чтения
+     * @param activeKeyId каким ключом шифровать; нет его в кольце — новые секреты PLAINTEXT
+     */
+    public CryptoUtil(Map<Integer, byte[]> keys, int activeKeyId, Logger log) {
+        keys.forEach((id, key) -> ring[id & 0xFF] = new SecretKeySpec(key, "AES"));
+        this.keyId = (byte) activeKeyId;
+        this.keySpec = ring[activeKeyId & 0xFF];
+        this.log = log;
+    }
+
+    /** Активный ключ, или -1 в PLAINTEXT режиме. */
+    public int activeKeyId() {
+        return keySpec == null ? -1 : keyId & 0xFF;
+    }
+
+    /**
+     * Отпечаток кольца (SHA-256 по id и ключам, первые 8 байт): меняется, когда в
+     * security.previous_keys добавили или убрали ключ. Сами ключи по нему не восстановить.
+     */
+    public String ringFingerprint() {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (int id = 0; id < ring.length; id++) {
+                if (ring[id] == null) continue;
+                digest.update((byte) id);
+                digest.update(ring[id].getEncoded());
+            }
+            return HexFormat.of().formatHex(digest.digest(), 0, 8);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 
     public byte[] protect(String plaintext) {
-        if (key == null) return ("PLA:" + plaintext).getBytes();
+        if (keySpec == null) return plain(plaintext);
         try {
-            byte[] iv = new byte[12]; RNG.nextBytes(iv);
-            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
-            cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), new GCMParameterSpec(128, iv));
-            byte[] ct = cipher.doFinal(plaintext.getBytes());
-            byte[] out = new byte[iv.length + ct.length];
-            System.arraycopy(iv, 0, out, 0, iv.length);
-            System.arraycopy(ct, 0, out, iv.length, ct.length);
-            return ("ENC:" + Base64.getEncoder().encodeToString(out)).getBytes();
-        } catch (Exception e) {
+            return seal(plaintext);
+        } catch (GeneralSecurityException e) {
             log.warning("Шифрование не удалось, сохраню PLAINTEXT: " + e.getMessage());
-            return ("PLA:" + plaintext).getBytes();
+            return plain(plaintext);
+        }
+    }
+
+    /** Уже в конверте активного ключа — перешифровывать нечего (в PLAINTEXT режиме — всегда). */
+    public boolean isCurrent(byte[] stored) {
+        return keySpec == null || (stored.length >= MIN_ENVELOPE && stored[0] == ENVELOPE_V1 && stored[1] == keyId);
+    }
+
+    /**
+     * Перешифровать сохранённое значение активным ключом; в отличие от protect
+     * при ошибке не откатывается в PLAINTEXT.
+     * @throws IllegalStateException значение не расшифровать (ключа нет в кольце) или ключ не подходит
+     */
+    public byte[] rewrap(byte[] stored) {
+        if (keySpec == null) throw new IllegalStateException("Активный ключ не задан");
+        try {
+            return seal(reveal(stored));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Шифрование не удалось: " + e.getMessage(), e);
+        }
+    }
+
+    private byte[] seal(String plaintext) throws GeneralSecurityException {
+        byte[] pt = plaintext.getBytes(StandardCharsets.UTF_8);
+        try {
+            byte[] out = new byte[MIN_ENVELOPE + pt.length];
+            out[0] = ENVELOPE_V1;
+            out[1] = keyId;
+            byte[] iv = new byte[IV_BYTES]; RNG.nextBytes(iv);
+            System.arraycopy(iv, 0, out, HEADER_BYTES, IV_BYTES);
+            Cipher cipher = CIPHERS.get();
+            cipher.init(Cipher.ENCRYPT_MODE, keySpec, new GCMParameterSpec(TAG_BITS, out, HEADER_BYTES, IV_BYTES));
+            cipher.updateAAD(out, 0, HEADER_BYTES);
+            cipher.doFinal(pt, 0, pt.length, out, HEADER_BYTES + IV_BYTES);
+            return out;
+        } finally {
+            Arrays.fill(pt, (byte) 0);
         }
     }
 
     public String reveal(byte[] stored) {
-        String s = new String(stored);
+        if (stored.length > 0 && stored[0] == ENVELOPE_V1) return open(stored);
+        String s = new String(stored, StandardCharsets.UTF_8);
         if (s.startsWith("PLA:")) return s.substring(4);
-        if (s.startsWith("ENC:")) {
-            if (key == null) throw new IllegalStateException("Нет ключа для расшифровки ENC-секрета");
+        if (s.startsWith("ENC:")) return openLegacy(Base64.getDecoder().decode(s.substring(4)));
+        // для обратной совместимости: если префикса нет — считаем PLA
+        return s;
+    }
+
+    private String open(byte[] stored) {
+        if (stored.length < MIN_ENVELOPE) throw new IllegalStateException("Повреждённый конверт секрета");
+        SecretKeySpec spec = ring[stored[1] & 0xFF];
+        if (spec == null) throw new IllegalStateException("Нет ключа " + (stored[1] & 0xFF) + " для расшифровки секрета");
+        try {
+            return decrypt(spec, stored, HEADER_BYTES, HEADER_BYTES, stored.length - HEADER_BYTES);
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            throw new IllegalStateException("Расшифровка не удалась: " + e.getMessage(), e);
+        }
+    }
+
+    /** В ENC: нет id ключа: сначала активный, затем остальные из кольца. */
+    private String openLegacy(byte[] blob) {
+        GeneralSecurityException last = null;
+        for (int i = -1; i < ring.length; i++) {
+            SecretKeySpec spec = i < 0 ? keySpec : ring[i];
+            if (spec == null || (i >= 0 && spec == keySpec)) continue;
             try {
-                byte[] blob = Base64.getDecoder().decode(s.substring(4));
-                byte[] iv = new byte[12];
-                byte[] ct = new byte[blob.length - 12];
-                System.arraycopy(blob, 0, iv, 0, 12);
-                System.arraycopy(blob, 12, ct, 0, ct.length);
-                Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
-                cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, "AES"), new GCMParameterSpec(128, iv));
-                return new String(cipher.doFinal(ct));
-            } catch (Exception e) {
-                throw new IllegalStateException("Расшифровка не удалась: " + e.getMessage(), e);
+                return decrypt(spec, blob, 0, 0, blob.length);
+            } catch (GeneralSecurityException e) {
+                last = e;
+            } catch (IllegalArgumentException e) {
+                throw new IllegalStateException("Повреждённый ENC-секрет", e);
             }
         }
-        // для обратной совместимости: если префикса нет — считаем PLA
-        return s;
+        if (last == null) throw new IllegalStateException("Нет ключа для расшифровки ENC-секрета");
+        throw new IllegalStateException("Расшифровка не удалась: ни один ключ кольца не подошёл", last);
+    }
+
+    /** IV и шифртекст читаются из src по смещениям, без копий; aadLength байт перед IV — AAD. */
+    private static String decrypt(SecretKeySpec spec, byte[] src, int aadLength, int offset, int length) throws GeneralSecurityException {
+        byte[] pt = null;
+        try {
+            Cipher cipher = CIPHERS.get();
+            cipher.init(Cipher.DECRYPT_MODE, spec, new GCMParameterSpec(TAG_BITS, src, offset, IV_BYTES));
+            if (aadLength > 0) cipher.updateAAD(src, 0, aadLength);
+            pt = cipher.doFinal(src, offset + IV_BYTES, length - IV_BYTES);
+            return new String(pt, StandardCharsets.UTF_8);
+        } finally {
+            if (pt != null) Arrays.fill(pt, (byte) 0);
+        }
+    }
+
+    private static byte[] plain(String plaintext) {
+        return ("PLA:" + plaintext).getBytes(StandardCharsets.UTF_8);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,212 @@
+package space.blockera.twofa.security;
+
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+import space.blockera.twofa.storage.StorageUnavailableException;
+import space.blockera.twofa.storage.UserRepository;
+import space.blockera.twofa.storage.UserRepository.SecretRewrite;
+import space.blockera.twofa.storage.UserRepository.StoredSecret;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Logger;
+
+/**
+ * Фоновая перешифровка twofa_users активным ключом: PLA:/ENC:-секреты и конверты прежних
+ * ключей. Таблица читается порциями по первичному ключу (uuid > последний), каждая порция
+ * переписывается одной транзакцией с проверкой, что секрет не изменился после чтения, —
+ * без блокировки таблицы, вход игроков продолжает работать. Позиция сохраняется в
+ * checkpoint_file после каждой порции, после рестарта работа продолжается с неё.
+ * Вместе с позицией сохраняется отпечаток кольца ключей: если кольцо изменилось
+ * (в security.previous_keys добавили ключ), таблица проходится заново — секреты,
+ * которые раньше не расшифровались, получают ещё одну попытку.
+ */
+public class KeyRotationJob {
+
+    /** security.rotation: размер порции, пауза между порциями, предел порций за проход таймера. */
+    public record Settings(boolean enabled, int batchSize, long pauseMillis, int maxBatchesPerRun) {
+        public static Settings fromConfig(FileConfiguration cfg) {
+            return new Settings(
+                    cfg.getBoolean("security.rotation.enabled", false),
+                    Math.max(1, cfg.getInt("security.rotation.batch_size", 200)),
+                    Math.max(0L, cfg.getLong("security.rotation.batch_pause_ms", 250L)),
+                    Math.max(1, cfg.getInt("security.rotation.max_batches_per_run", 100)));
+        }
+    }
+
+    /**
+     * @param current   уже были в конверте активного ключа
+     * @param conflicts изменились между чтением и записью (/2fa setup, отключение) и пропущены
+     * @param failed    не расшифрованы: ключа нет в кольце (security.previous_keys)
+     */
+    public record Progress(int targetKeyId, long scanned, long rewritten, long current,
+                           long conflicts, long failed, boolean done) { }
+
+    /** После /2fa reload прежний экземпляр может ещё дописывать порцию. */
+    private static final Lock RUNNING = new ReentrantLock();
+
+    private final UserRepository users;
+    private final CryptoUtil crypto;
+    private final Settings settings;
+    private final File checkpointFile;
+    private final Logger log;
+
+    private volatile Progress progress;
+    private UUID cursor;
+
+    public KeyRotationJob(UserRepository users, CryptoUtil crypto, Settings settings, File checkpointFile, Logger log) {
+        this.users = users;
+        this.crypto = crypto;
+        this.settings = settings;
+        this.checkpointFile = checkpointFile;
+        this.log = log;
+        this.progress = new Progress(crypto.activeKeyId(), 0, 0, 0, 0, 0, false);
+    }
+
+    /** null — перешифровка выключена или не начиналась. */
+    public Progress progress() {
+        return settings.enabled() && crypto.activeKeyId() >= 0 ? progress : null;
+    }
+
+    /**
+     * Не больше max_batches_per_run порций; вызывается асинхронным таймером.
+     * @param keepRunning false — прервать между порциями (плагин выключается или перезагружен)
+     */
+    public void run(BooleanSupplier keepRunning) {
+        if (!settings.enabled() || crypto.activeKeyId() < 0) return;
+        if (!RUNNING.tryLock()) return;
+        try {
+            loadCheckpoint();
+            Progress p = progress;
+            if (p.done()) return;
+            long rewrittenBefore = p.rewritten();
+            for (int batch = 0; batch < settings.maxBatchesPerRun(); batch++) {
+                if (!keepRunning.getAsBoolean()) break;
+                if (!step()) break;
+                if (progress.done()) break;
+                if (!pause(settings.pauseMillis())) break;
+            }
+            report(rewrittenBefore);
+        } finally {
+            RUNNING.unlock();
+        }
+    }
+
+    /** Одна порция. @return false — хранилище не ответило, повтор на следующем проходе */
+    private boolean step() {
+        List<StoredSecret> rows;
+        try {
+            rows = users.secretsAfter(cursor, settings.batchSize());
+        } catch (StorageUnavailableException e) {
+            log.warning("Перешифровка секретов: " + e.getMessage());
+            return false;
+        }
+        Progress p = progress;
+        long current = 0;
+        long failed = 0;
+        List<SecretRewrite> rewrites = new ArrayList<>(rows.size());
+        for (StoredSecret row : rows) {
+            if (crypto.isCurrent(row.secret())) {
+                current++;
+                continue;
+            }
+            try {
+                rewrites.add(new SecretRewrite(row.uuid(), row.secret(), crypto.rewrap(row.secret())));
+            } catch (IllegalStateException e) {
+                if (p.failed() + failed == 0) log.warning("Перешифровка секретов: " + row.uuid() + " — " + e.getMessage());
+                failed++;
+            }
+        }
+        int rewritten;
+        try {
+            rewritten = users.rewriteSecrets(rewrites);
+        } catch (StorageUnavailableException e) {
+            log.warning("Перешифровка секретов: " + e.getMessage());
+            return false;
+        }
+        if (!rows.isEmpty()) cursor = rows.get(rows.size() - 1).uuid();
+        progress = new Progress(p.targetKeyId(), p.scanned() + rows.size(), p.rewritten() + rewritten,
+                p.current() + current, p.conflicts() + rewrites.size() - rewritten, p.failed() + failed,
+                rows.size() < settings.batchSize());
+        saveCheckpoint();
+        return true;
+    }
+
+    private void report(long rewrittenBefore) {
+        Progress p = progress;
+        if (p.done()) {
+            log.info("Перешифровка секретов на ключ " + p.targetKeyId() + " завершена: просмотрено " + p.scanned()
+                    + ", перешифровано " + p.rewritten() + ", не расшифровано " + p.failed() + ".");
+            if (p.failed() > 0) log.warning("Не расшифрованные секреты остались прежними: добавьте их ключ в security.previous_keys"
+                    + " — после /2fa reload или рестарта таблица будет пройдена заново.");
+        } else if (p.rewritten() > rewrittenBefore) {
+            log.info("Перешифровка секретов на ключ " + p.targetKeyId() + ": просмотрено " + p.scanned()
+                    + ", перешифровано " + p.rewritten() + ", продолжение со следующим проходом.");
+        }
+    }
+
+    /**
+     * Позиция из файла; другой целевой ключ или другое кольцо ключей — проход с начала.
+     * Уже загруженная позиция не перечитывается.
+     */
+    private void loadCheckpoint() {
+        if (cursor != null || progress.scanned() > 0 || !checkpointFile.isFile()) return;
+        YamlConfiguration saved = YamlConfiguration.loadConfiguration(checkpointFile);
+        int target = crypto.activeKeyId();
+        if (saved.getInt("target_key_id", -1) != target) return;
+        if (!crypto.ringFingerprint().equals(saved.getString("key_ring", ""))) {
+            log.info("Перешифровка секретов: кольцо ключей изменилось, таблица будет пройдена заново.");
+            return;
+        }
+        String last = saved.getString("cursor", "");
+        try {
+            cursor = last.isEmpty() ? null : UUID.fromString(last);
+        } catch (IllegalArgumentException e) {
+            log.warning("Перешифровка секретов: повреждённый " + checkpointFile.getName() + ", начинаю с начала.");
+            return;
+        }
+        progress = new Progress(target, saved.getLong("scanned"), saved.getLong("rewritten"), saved.getLong("current"),
+                saved.getLong("conflicts"), saved.getLong("failed"), saved.getBoolean("done"));
+    }
+
+    /** Через временный файл и переименование: оборванная запись не портит позицию. */
+    private void saveCheckpoint() {
+        Progress p = progress;
+        YamlConfiguration out = new YamlConfiguration();
+        out.set("target_key_id", p.targetKeyId());
+        out.set("key_ring", crypto.ringFingerprint());
+        out.set("cursor", cursor == null ? "" : cursor.toString());
+        out.set("scanned", p.scanned());
+        out.set("rewritten", p.rewritten());
+        out.set("current", p.current());
+        out.set("conflicts", p.conflicts());
+        out.set("failed", p.failed());
+        out.set("done", p.done());
+        File tmp = new File(checkpointFile.getPath() + ".tmp");
+        try {
+            out.save(tmp);
+            Files.move(tmp.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warning("Перешифровка секретов: не удалось сохранить " + checkpointFile.getName() + ": " + e.getMessage());
+        }
+    }
+
+    private static boolean pause(long millis) {
+        if (millis <= 0) return true;
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
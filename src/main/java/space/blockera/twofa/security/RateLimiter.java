@@ -0,0 +1,129 @@
+package space.blockera.twofa.security;
+
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Token bucket на подкоманду /2fa — отдельно по игроку и по IP, проверяется до запросов
+ * к БД и криптографии. Бакеты разложены по полосам со своей блокировкой; на обращение
+ * не создаётся ничего, кроме бакета для нового ключа. Бакет, который простоял дольше
+ * idle_evict_seconds (и всё равно успел бы заполниться), удаляется при обходе своей полосы.
+ */
+public class RateLimiter {
+
+    public enum Action {
+        CONFIRM("confirm", 5, 5),
+        DISABLE("disable", 3, 3),
+        LINK("link", 3, 2);
+
+        private final String key;
+        private final int defaultBurst;
+        private final int defaultPerMinute;
+
+        Action(String key, int defaultBurst, int defaultPerMinute) {
+            this.key = key;
+            this.defaultBurst = defaultBurst;
+            this.defaultPerMinute = defaultPerMinute;
+        }
+    }
+
+    private static final int STRIPES = 16;
+    private static final long MINUTE_NANOS = 60_000_000_000L;
+
+    private final boolean enabled;
+    private final Map<Action, Buckets<UUID>> players = new EnumMap<>(Action.class);
+    private final Map<Action, Buckets<String>> ips = new EnumMap<>(Action.class);
+
+    private RateLimiter(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /** security.rate_limit: burst и per_minute для каждой подкоманды, бакет IP — в ip_multiplier раз больше. */
+    public static RateLimiter fromConfig(FileConfiguration cfg) {
+        RateLimiter limiter = new RateLimiter(cfg.getBoolean("security.rate_limit.enabled", true));
+        long idleNanos = Math.max(1L, cfg.getLong("security.rate_limit.idle_evict_seconds", 600L)) * 1_000_000_000L;
+        int ipMultiplier = Math.max(1, cfg.getInt("security.rate_limit.ip_multiplier", 4));
+        for (Action action : Action.values()) {
+            String path = "security.rate_limit." + action.key + ".";
+            int burst = Math.max(1, cfg.getInt(path + "burst", action.defaultBurst));
+            int perMinute = Math.max(1, cfg.getInt(path + "per_minute", action.defaultPerMinute));
+            limiter.players.put(action, new Buckets<>(burst, perMinute, idleNanos));
+            limiter.ips.put(action, new Buckets<>(burst * ipMultiplier, perMinute * ipMultiplier, idleNanos));
+        }
+        return limiter;
+    }
+
+    /** @param ip null — только бакет игрока */
+    public boolean tryAcquire(Action action, UUID player, String ip) {
+        if (!enabled) return true;
+        long now = System.nanoTime();
+        if (!players.get(action).tryAcquire(player, now)) return false;
+        return ip == null || ips.get(action).tryAcquire(ip, now);
+    }
+
+    private static final class Bucket {
+        double tokens;
+        long touched;
+
+        Bucket(double tokens, long touched) {
+            this.tokens = tokens;
+            this.touched = touched;
+        }
+    }
+
+    private static final class Stripe<K> {
+        final Map<K, Bucket> buckets = new HashMap<>();
+        long lastSweep;
+    }
+
+    private static final class Buckets<K> {
+        private final double capacity;
+        private final double tokensPerNano;
+        private final long evictAfterNanos;
+        private final Stripe<K>[] stripes;
+
+        @SuppressWarnings("unchecked")
+        Buckets(int capacity, int perMinute, long idleNanos) {
+            this.capacity = capacity;
+            this.tokensPerNano = perMinute / (double) MINUTE_NANOS;
+            // раньше удалять нельзя: бакет, не успевший заполниться, сбросился бы в полный
+            this.evictAfterNanos = Math.max(idleNanos, (long) (capacity / tokensPerNano));
+            this.stripes = new Stripe[STRIPES];
+            for (int i = 0; i < STRIPES; i++) {
+                stripes[i] = new Stripe<>();
+            }
+        }
+
+        boolean tryAcquire(K key, long now) {
+            int h = key.hashCode();
+            Stripe<K> stripe = stripes[(h ^ (h >>> 16)) & (STRIPES - 1)];
+            synchronized (stripe) {
+                if (now - stripe.lastSweep > evictAfterNanos) {
+                    sweep(stripe, now);
+                }
+                Bucket bucket = stripe.buckets.get(key);
+                if (bucket == null) {
+                    stripe.buckets.put(key, new Bucket(capacity - 1, now));
+                    return true;
+                }
+                bucket.tokens = Math.min(capacity, bucket.tokens + (now - bucket.touched) * tokensPerNano);
+                bucket.touched = now;
+                if (bucket.tokens < 1) return false;
+                bucket.tokens -= 1;
+                return true;
+            }
+        }
+
+        private void sweep(Stripe<K> stripe, long now) {
+            stripe.lastSweep = now;
+            for (Iterator<Bucket> it = stripe.buckets.values().iterator(); it.hasNext(); ) {
+                if (now - it.next().touched > evictAfterNanos) it.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package space.blockera.twofa.session;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Хешированное колесо сроков: слот = тик срока по модулю SLOTS. Постановка — O(1), один
+ * таймер раз в тик обходит прошедшие слоты и отдаёт игроков, чей срок наступил. Сроки дальше
+ * одного оборота лежат в слоте до своего оборота. Игрок в слоте один: повторная постановка
+ * оставляет ближайший срок, а владелец, получив игрока, сам ставит его на следующий срок.
+ */
+final class ExpiryWheel {
+    private static final int SLOTS = 4096;
+
+    private final long tickMillis;
+    private final Map<UUID, Long>[] slots;
+    /** Последний обработанный тик. */
+    private volatile long cursor;
+
+    @SuppressWarnings("unchecked")
+    ExpiryWheel(long tickMillis, long now) {
+        this.tickMillis = tickMillis;
+        this.slots = new Map[SLOTS];
+        for (int i = 0; i < SLOTS; i++) {
+            slots[i] = new HashMap<>();
+        }
+        this.cursor = now / tickMillis;
+    }
+
+    /** @param deadline epoch millis; 0 — срока нет */
+    void schedule(UUID uuid, long deadline) {
+        if (deadline <= 0L) return;
+        // первый тик не раньше срока; уже обработанный — в ближайший, иначе срок ждал бы целый оборот
+        long tick = Math.max((deadline + tickMillis - 1) / tickMillis, cursor + 1);
+        Map<UUID, Long> slot = slots[(int) (tick & (SLOTS - 1))];
+        synchronized (slot) {
+            slot.merge(uuid, deadline, Math::min);
+        }
+    }
+
+    /** Обойти слоты до тика now; due вызывается вне блокировок и может снова ставить игрока. */
+    void advance(long now, Consumer<UUID> due) {
+        long target = now / tickMillis;
+        long from;
+        synchronized (this) {
+            from = cursor + 1;
+            if (target < from) return;
+            cursor = target;
+        }
+        // таймер простоял дольше оборота — каждый слот достаточно обойти один раз
+        from = Math.max(from, target - SLOTS + 1);
+        List<UUID> expired = new ArrayList<>();
+        for (long tick = from; tick <= target; tick++) {
+            Map<UUID, Long> slot = slots[(int) (tick & (SLOTS - 1))];
+            synchronized (slot) {
+                for (Iterator<Map.Entry<UUID, Long>> it = slot.entrySet().iterator(); it.hasNext(); ) {
+                    Map.Entry<UUID, Long> e = it.next();
+                    if (e.getValue() > now) continue;
+                    expired.add(e.getKey());
+                    it.remove();
+                }
+            }
+            for (UUID uuid : expired) {
+                due.accept(uuid);
+            }
+            expired.clear();
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package space.blockera.twofa.session;
+
+import space.blockera.twofa.storage.LoginStateRepository.LoginSnapshot;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Снимки состояния 2FA, загруженные в AsyncPlayerPreLoginEvent. onJoin читает их
+ * без обращения к БД; живут до выхода игрока.
+ */
+public class LoginSnapshots {
+    /** Между pre-login и join проходят доли секунды; старый снимок лучше перечитать. */
+    private static final long MAX_AGE_MILLIS = 60_000L;
+
+    private final Map<UUID, LoginSnapshot> snapshots = new ConcurrentHashMap<>();
+
+    public void put(LoginSnapshot snapshot) {
+        snapshots.put(snapshot.playerUuid(), snapshot);
+    }
+
+    /** @return свежий снимок или null — тогда вызывающий идёт в БД асинхронно. */
+    public LoginSnapshot get(UUID uuid) {
+        LoginSnapshot snapshot = snapshots.get(uuid);
+        if (snapshot == null) return null;
+        if (System.currentTimeMillis() - snapshot.loadedAtMillis() > MAX_AGE_MILLIS) {
+            snapshots.remove(uuid, snapshot);
+            return null;
+        }
+        return snapshot;
+    }
+
+    public void remove(UUID uuid) {
+        snapshots.remove(uuid);
+    }
+}
@@ -5,21 +5,40 @@ import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.entity.Player;
 
 import java.net.InetSocketAddress;
-import java.time.Instant;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+
+/**
+ * Состояние 2FA игроков на этом сервере: подтверждение, ожидание кода и кулдауны.
+ * Всё состояние игрока — одна неизменяемая запись в одной карте; запись меняется целиком
+ * через compute, поэтому проверки делают один get без выделения памяти, а сроки — epoch millis.
+ * Истёкшее убирает ExpiryWheel (expireDue раз в секунду): в памяти остаются только игроки
+ * с действующим подтверждением, ожиданием или кулдауном.
+ */
 public class SessionService {
     private static final CooldownPolicy.CooldownRule ALWAYS_REQUIRE = CooldownPolicy.CooldownRule.always();
+    /** Сколько IP с отдельным кулдауном помнить на игрока; при переполнении вытесняется истекающий раньше. */
+    static final int MAX_IP_COOLDOWNS = 4;
+
+    private static final long WHEEL_TICK_MILLIS = 1000L;
+
+    /** Живые записи: игроки и поля состояния, для /2fa stats. */
+    public record Gauges(int players, long verified, long pending, long cooldowns) { }
 
-    private final Map<UUID, Instant> verifiedUntil = new ConcurrentHashMap<>();
-    private final Map<UUID, PendingState> pending = new ConcurrentHashMap<>();
-    private final ConcurrentMap<UUID, Instant> globalCooldown = new ConcurrentHashMap<>();
-    private final ConcurrentMap<UUID, ConcurrentMap<String, Instant>> perIpCooldown = new ConcurrentHashMap<>();
+    private final Map<UUID, State> states = new ConcurrentHashMap<>();
+    private final ExpiryWheel wheel = new ExpiryWheel(WHEEL_TICK_MILLIS, System.currentTimeMillis());
+    private final LongAdder verified = new LongAdder();
+    private final LongAdder pending = new LongAdder();
+    private final LongAdder cooldowns = new LongAdder();
+    /** Игроки, чьи подтверждение или кулдауны менялись с прошлого drainChanged; null — не отслеживаются. */
+    private volatile Set<UUID> changed;
 
     private int expireMinutes;
     private CooldownPolicy cooldownPolicy = CooldownPolicy.disabled();
@@ -39,42 +58,50 @@ public class SessionService {
     }
 
     public void markPending(UUID uuid) {
-        pending.put(uuid, new PendingState(null, null));
+        update(uuid, s -> s.withPending(true, null, null), false);
     }
 
     public void markPending(UUID uuid, CooldownPolicy.CooldownRule rule, String ip) {
-        pending.put(uuid, new PendingState(rule, normalizeIp(ip)));
+        String normalized = normalizeIp(ip);
+        update(uuid, s -> s.withPending(true, rule, normalized), false);
     }
 
     public void clearPending(UUID uuid) {
-        pending.remove(uuid);
+        update(uuid, s -> s.withPending(false, null, null), false);
     }
 
     public boolean isPending(UUID uuid) {
-        return pending.containsKey(uuid);
+        State s = states.get(uuid);
+        return s != null && s.pending();
+    }
+
+    /** Ждёт кода и не подтверждён — проверка слушателей на каждое событие. */
+    public boolean isLocked(UUID uuid) {
+        State s = states.get(uuid);
+        return s != null && s.pending() && s.verifiedUntil() < System.currentTimeMillis();
     }
 
+    /** Правило и IP берутся из ожидания (markPending), кулдаун записывается в том же обновлении. */
     public void markVerified(UUID uuid, String ip) {
-        PendingState state = pending.get(uuid);
-        markTrusted(uuid);
-        CooldownPolicy.CooldownRule rule = state != null && state.rule() != null ? state.rule() : cooldownPolicy.defaultRule();
-        String resolvedIp = state != null && state.ip() != null ? state.ip() : normalizeIp(ip);
-        recordCooldown(uuid, resolvedIp, rule);
+        long now = System.currentTimeMillis();
+        long verifiedUntil = now + expireMinutes * 60_000L;
+        String fallbackIp = normalizeIp(ip);
+        CooldownPolicy.CooldownRule fallbackRule = cooldownPolicy.defaultRule();
+        update(uuid, s -> {
+            CooldownPolicy.CooldownRule rule = s.pending() && s.pendingRule() != null ? s.pendingRule() : fallbackRule;
+            String resolvedIp = s.pending() && s.pendingIp() != null ? s.pendingIp() : fallbackIp;
+            return s.withVerified(verifiedUntil).withPending(false, null, null).withCooldown(rule, resolvedIp, now);
+        }, true);
     }
 
     public void markTrusted(UUID uuid) {
-        verifiedUntil.put(uuid, Instant.now().plusSeconds(expireMinutes * 60L));
-        clearPending(uuid);
+        long verifiedUntil = System.currentTimeMillis() + expireMinutes * 60_000L;
+        update(uuid, s -> s.withVerified(verifiedUntil).withPending(false, null, null), false);
     }
 
     public boolean isVerified(UUID uuid) {
-        Instant until = verifiedUntil.get(uuid);
-        if (until == null) return false;
-        if (Instant.now().isAfter(until)) {
-            verifiedUntil.remove(uuid);
-            return false;
-        }
-        return true;
+        State s = states.get(uuid);
+        return s != null && s.verifiedUntil() >= System.currentTimeMillis();
     }
 
     public boolean isWithinCooldown(UUID uuid, String ip, CooldownPolicy.CooldownRule rule) {
@@ -82,26 +109,18 @@ public class SessionService {
         if (effective == null || effective.alwaysRequire()) {
             return false;
         }
+        State s = states.get(uuid);
+        if (s == null) return false;
+        long now = System.currentTimeMillis();
         String normalized = normalizeIp(ip);
-        Instant now = Instant.now();
         if (effective.usePerIp() && normalized != null) {
-            ConcurrentMap<String, Instant> playerMap = perIpCooldown.get(uuid);
-            if (playerMap == null) return false;
-            Instant until = playerMap.get(normalized);
-            if (until == null) return false;
-            if (now.isAfter(until)) {
-                playerMap.remove(normalized);
-                return false;
+            String[] ips = s.cooldownIps();
+            for (int i = 0; i < ips.length; i++) {
+                if (ips[i].equals(normalized)) return s.cooldownIpUntil()[i] >= now;
             }
-            return true;
-        }
-        Instant until = globalCooldown.get(uuid);
-        if (until == null) return false;
-        if (now.isAfter(until)) {
-            globalCooldown.remove(uuid);
             return false;
         }
-        return true;
+        return s.cooldownUntil() >= now;
     }
 
     public CooldownPolicy.CooldownRule resolveRule(Player player) {
@@ -115,9 +134,12 @@ public class SessionService {
         return cooldownPolicy;
     }
 
+    /**
+     * Выход или отключение 2FA: подтверждение и ожидание сбрасываются. Кулдауны остаются —
+     * по ним повторный вход проходит без кода; после срока их убирает колесо.
+     */
     public void clear(UUID uuid) {
-        verifiedUntil.remove(uuid);
-        pending.remove(uuid);
+        update(uuid, s -> s.withVerified(0L).withPending(false, null, null), false);
     }
 
     public static String currentIp(Player player) {
@@ -128,29 +150,185 @@ public class SessionService {
         return address.getAddress().getHostAddress();
     }
 
-    private void recordCooldown(UUID uuid, String ip, CooldownPolicy.CooldownRule rule) {
-        CooldownPolicy.CooldownRule effective = rule != null ? rule : ALWAYS_REQUIRE;
-        if (effective.alwaysRequire()) {
-            globalCooldown.remove(uuid);
-            perIpCooldown.remove(uuid);
-            return;
-        }
+    /** Убрать истёкшее по колесу сроков; вызывается одним асинхронным таймером. */
+    public void expireDue() {
+        // истёкшее не записывается в журнал: при загрузке оно и так отбрасывается
+        wheel.advance(System.currentTimeMillis(), uuid -> update(uuid, UnaryOperator.identity(), false));
+    }
+
+    // ===== сохранение между рестартами (SessionSnapshotStore) =====
 
-        Instant until = Instant.now().plusSeconds(effective.minutes() * 60L);
-        if (effective.usePerIp() && ip != null) {
-            perIpCooldown.computeIfAbsent(uuid, key -> new ConcurrentHashMap<>()).put(ip, until);
-        } else {
-            globalCooldown.put(uuid, until);
+    /**
+     * То, что переживает рестарт: только кулдауны, они и так привязаны к правилу и IP.
+     * Подтверждение и ожидание кода — нет: подтверждение ни к чему не привязано, и после
+     * рестарта любой вход под этим UUID прошёл бы без 2FA до конца expire_minutes.
+     */
+    public interface PersistentState {
+        void accept(UUID uuid, long cooldownUntil, String[] ips, long[] ipUntil);
+    }
+
+    /** Начать копить изменённых игроков для drainChanged. */
+    public void trackChanges() {
+        if (changed == null) changed = ConcurrentHashMap.newKeySet();
+    }
+
+    /** Все игроки с кулдауном. */
+    public void forEachPersistent(PersistentState sink) {
+        states.forEach((uuid, s) -> {
+            if (s.cooldownUntil() != 0L || s.cooldownIps().length != 0) {
+                sink.accept(uuid, s.cooldownUntil(), s.cooldownIps(), s.cooldownIpUntil());
+            }
+        });
+    }
+
+    /** Изменённые с прошлого вызова; у сброшенных все сроки 0. */
+    public void drainChanged(PersistentState sink) {
+        Set<UUID> batch = changed;
+        if (batch == null) return;
+        for (var it = batch.iterator(); it.hasNext(); ) {
+            UUID uuid = it.next();
+            it.remove();
+            State s = states.get(uuid);
+            if (s == null) s = State.EMPTY;
+            sink.accept(uuid, s.cooldownUntil(), s.cooldownIps(), s.cooldownIpUntil());
         }
     }
 
+    /**
+     * Запись из снимка: заменяет кулдауны игрока; истёкшее отбрасывается. Подтверждённым
+     * игрок после рестарта не становится. Только при запуске, до слушателей: без compute,
+     * ожидания кода у игрока ещё нет.
+     */
+    public void restore(UUID uuid, long cooldownUntil, String[] ips, long[] ipUntil) {
+        State restored = new State(0L, false, null, null, cooldownUntil, ips, ipUntil).pruned(System.currentTimeMillis());
+        State previous = restored != null ? states.put(uuid, restored) : states.remove(uuid);
+        count(previous, -1);
+        count(restored, 1);
+        if (restored != null) wheel.schedule(uuid, restored.nextDeadline());
+    }
+
+    public Gauges gauges() {
+        return new Gauges(states.size(), verified.sum(), pending.sum(), cooldowns.sum());
+    }
+
+    /**
+     * Истёкшее отбрасывается при каждой записи; запись без живых полей удаляется из карты.
+     * Счётчики меняются внутри compute — он выполняется для ключа атомарно и ровно один раз.
+     */
+    private void update(UUID uuid, UnaryOperator<State> change, boolean persistent) {
+        long now = System.currentTimeMillis();
+        State next = states.compute(uuid, (key, s) -> {
+            State updated = change.apply(s != null ? s : State.EMPTY).pruned(now);
+            count(s, -1);
+            count(updated, 1);
+            return updated;
+        });
+        if (next != null) wheel.schedule(uuid, next.nextDeadline());
+        Set<UUID> track = changed;
+        if (persistent && track != null) track.add(uuid);
+    }
+
+    private void count(State s, int sign) {
+        if (s == null) return;
+        if (s.verifiedUntil() != 0L) verified.add(sign);
+        if (s.pending()) pending.add(sign);
+        int c = s.cooldownIps().length + (s.cooldownUntil() != 0L ? 1 : 0);
+        if (c != 0) cooldowns.add((long) sign * c);
+    }
+
     private static String normalizeIp(String ip) {
         if (ip == null) return null;
         String trimmed = ip.trim();
         return trimmed.isEmpty() ? null : trimmed;
     }
 
-    private record PendingState(CooldownPolicy.CooldownRule rule, String ip) { }
+    /**
+     * Состояние одного игрока. Сроки — epoch millis, 0 — нет; действует, пока now <= срок.
+     * Кулдауны по IP — параллельные массивы длиной не больше MAX_IP_COOLDOWNS.
+     */
+    private record State(long verifiedUntil, boolean pending, CooldownPolicy.CooldownRule pendingRule, String pendingIp,
+                         long cooldownUntil, String[] cooldownIps, long[] cooldownIpUntil) {
+        private static final String[] NO_IPS = new String[0];
+        private static final long[] NO_UNTIL = new long[0];
+        static final State EMPTY = new State(0L, false, null, null, 0L, NO_IPS, NO_UNTIL);
+
+        State withVerified(long until) {
+            return new State(until, pending, pendingRule, pendingIp, cooldownUntil, cooldownIps, cooldownIpUntil);
+        }
+
+        State withPending(boolean pending, CooldownPolicy.CooldownRule rule, String ip) {
+            return new State(verifiedUntil, pending, rule, ip, cooldownUntil, cooldownIps, cooldownIpUntil);
+        }
+
+        State withCooldown(CooldownPolicy.CooldownRule rule, String ip, long now) {
+            CooldownPolicy.CooldownRule effective = rule != null ? rule : ALWAYS_REQUIRE;
+            if (effective.alwaysRequire()) {
+                return new State(verifiedUntil, pending, pendingRule, pendingIp, 0L, NO_IPS, NO_UNTIL);
+            }
+            long until = now + effective.minutes() * 60_000L;
+            if (!effective.usePerIp() || ip == null) {
+                return new State(verifiedUntil, pending, pendingRule, pendingIp, until, cooldownIps, cooldownIpUntil);
+            }
+            int slot = -1;
+            for (int i = 0; i < cooldownIps.length; i++) {
+                if (cooldownIps[i].equals(ip)) slot = i;
+            }
+            String[] ips;
+            long[] untils;
+            if (slot >= 0) {
+                ips = cooldownIps;
+                untils = cooldownIpUntil.clone();
+            } else if (cooldownIps.length < MAX_IP_COOLDOWNS) {
+                ips = Arrays.copyOf(cooldownIps, cooldownIps.length + 1);
+                untils = Arrays.copyOf(cooldownIpUntil, cooldownIpUntil.length + 1);
+                slot = cooldownIps.length;
+            } else {
+                slot = 0;
+                for (int i = 1; i < cooldownIpUntil.length; i++) {
+                    if (cooldownIpUntil[i] < cooldownIpUntil[slot]) slot = i;
+                }
+                ips = cooldownIps.clone();
+                untils = cooldownIpUntil.clone();
+            }
+            ips[slot] = ip;
+            untils[slot] = until;
+            return new State(verifiedUntil, pending, pendingRule, pendingIp, cooldownUntil, ips, untils);
+        }
+
+        /** Ближайший срок, 0 — сроков нет (только ожидание кода). */
+        long nextDeadline() {
+            long next = Long.MAX_VALUE;
+            if (verifiedUntil != 0L) next = verifiedUntil;
+            if (cooldownUntil != 0L) next = Math.min(next, cooldownUntil);
+            for (long until : cooldownIpUntil) {
+                next = Math.min(next, until);
+            }
+            return next == Long.MAX_VALUE ? 0L : next;
+        }
+
+        /** null — ничего живого не осталось. */
+        State pruned(long now) {
+            long verified = verifiedUntil >= now ? verifiedUntil : 0L;
+            long cooldown = cooldownUntil >= now ? cooldownUntil : 0L;
+            int live = 0;
+            for (long until : cooldownIpUntil) {
+                if (until >= now) live++;
+            }
+            if (!pending && verified == 0L && cooldown == 0L && live == 0) return null;
+            if (live == cooldownIps.length) {
+                return verified == verifiedUntil && cooldown == cooldownUntil ? this
+                        : new State(verified, pending, pendingRule, pendingIp, cooldown, cooldownIps, cooldownIpUntil);
+            }
+            String[] ips = new String[live];
+            long[] untils = new long[live];
+            for (int i = 0, j = 0; i < cooldownIps.length; i++) {
+                if (cooldownIpUntil[i] < now) continue;
+                ips[j] = cooldownIps[i];
+                untils[j++] = cooldownIpUntil[i];
+            }
+            return new State(verified, pending, pendingRule, pendingIp, cooldown, ips, untils);
+        }
+    }
 
     public static final class CooldownPolicy {
         private final boolean enabled;
@@ -0,0 +1,267 @@
+package space.blockera.twofa.session;
+
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/**
+ * Кулдауны SessionService между рестартами; подтверждения не сохраняются (см. PersistentState).
+ * Снимок (session.persistence.file) пишется целиком при выключении, а между снимками изменения
+ * дописываются в журнал рядом (.log) раз в flush_seconds. Запуск читает оба файла через mmap и отбрасывает истёкшее.
+ * У снимка и журнала одно поколение: журнал от прежнего снимка (сервер упал между заменой
+ * снимка и обнулением журнала) не проигрывается.
+ * Запись: UUID (2 × long), cooldown_until, число IP, по каждому — длина и байты адреса,
+ * срок. Сроки — epoch millis, 0 — нет. Файлы версии 1 хранили и подтверждение — они не читаются.
+ */
+public class SessionSnapshotStore {
+    private static final int SNAPSHOT_MAGIC = 0x32464153; // "2FAS"
+    private static final int LOG_MAGIC = 0x3246414C; // "2FAL"
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 16;
+
+    /** session.persistence. */
+    public record Settings(boolean enabled, String file, long flushSeconds, long compactRecords) {
+        public static Settings fromConfig(FileConfiguration cfg) {
+            return new Settings(
+                    cfg.getBoolean("session.persistence.enabled", true),
+                    cfg.getString("session.persistence.file", "sessions.bin"),
+                    Math.max(1L, cfg.getLong("session.persistence.flush_seconds", 30L)),
+                    Math.max(1000L, cfg.getLong("session.persistence.compact_log_records", 50_000L)));
+        }
+    }
+
+    private final Path snapshot;
+    private final Path journal;
+    private final long compactRecords;
+    private final Logger log;
+
+    private long generation;
+    /** Журнал на диске принадлежит текущему поколению — в него можно дописывать. */
+    private boolean journalValid;
+    private DataOutputStream out;
+    private long logRecords;
+    /**
+     * Запись в журнал оборвалась: вычерпанные из changed записи не дошли до диска, а хвост
+     * журнала мог остаться неполным. Следующий тик пишет полный снимок вместо журнала.
+     */
+    private boolean snapshotDue;
+
+    public SessionSnapshotStore(Path snapshot, long compactRecords, Logger log) {
+        this.snapshot = snapshot;
+        this.journal = snapshot.resolveSibling(snapshot.getFileName() + ".log");
+        this.compactRecords = compactRecords;
+        this.log = log;
+    }
+
+    /** Снимок, затем журнал того же поколения; истёкшее не попадает в память. Основной поток при запуске. */
+    public synchronized void load(SessionService sessions) {
+        long now = System.currentTimeMillis();
+        long loaded = 0;
+        boolean damaged = false;
+        try {
+            if (Files.isRegularFile(snapshot)) {
+                ByteBuffer buf = map(snapshot);
+                if (buf.remaining() >= HEADER_BYTES && buf.getInt() == SNAPSHOT_MAGIC && buf.getInt() == VERSION) {
+                    generation = buf.getLong();
+                    loaded += replay(buf, sessions, now);
+                } else {
+                    log.warning(snapshot.getFileName() + " не является снимком сессий этой версии, пропущен.");
+                }
+            }
+            if (Files.isRegularFile(journal)) {
+                ByteBuffer buf = map(journal);
+                if (buf.remaining() >= HEADER_BYTES && buf.getInt() == LOG_MAGIC && buf.getInt() == VERSION
+                        && buf.getLong() == generation) {
+                    logRecords = replay(buf, sessions, now);
+                    loaded += logRecords;
+                    damaged = buf.hasRemaining();
+                    journalValid = !damaged;
+                } else {
+                    damaged = true;
+                }
+            }
+        } catch (IOException e) {
+            log.warning("Сессии не восстановлены: " + e.getMessage());
+        }
+        sessions.trackChanges();
+        if (loaded > 0) log.info("Восстановлено записей сессий и кулдаунов: " + loaded + ".");
+        // дописывать после обрывка или в журнал чужого поколения нельзя — сразу новое поколение
+        if (damaged) writeSnapshot(sessions);
+    }
+
+    /** Изменения с прошлого вызова — в журнал; асинхронный таймер. Большой журнал сворачивается в снимок. */
+    public synchronized void flush(SessionService sessions) {
+        if (snapshotDue) {
+            writeSnapshot(sessions);
+            return;
+        }
+        try {
+            if (out == null) openJournal(!journalValid);
+            long[] written = {0};
+            IOException[] failed = {null};
+            sessions.drainChanged((uuid, cooldownUntil, ips, ipUntil) -> {
+                if (failed[0] != null) return;
+                try {
+                    writeRecord(out, uuid, cooldownUntil, ips, ipUntil);
+                    written[0]++;
+                } catch (IOException e) {
+                    failed[0] = e;
+                }
+            });
+            out.flush();
+            if (failed[0] != null) throw failed[0];
+            logRecords += written[0];
+        } catch (IOException e) {
+            log.warning("Журнал сессий: " + e.getMessage() + "; на следующем тике будет записан полный снимок.");
+            closeJournal();
+            journalValid = false;
+            snapshotDue = true;
+            return;
+        }
+        if (logRecords >= compactRecords) writeSnapshot(sessions);
+    }
+
+    /** Полный снимок во временный файл и атомарная замена, затем пустой журнал нового поколения. */
+    public synchronized void writeSnapshot(SessionService sessions) {
+        Path tmp = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+        long next = generation + 1;
+        try {
+            Files.createDirectories(snapshot.toAbsolutePath().getParent());
+            // изменения, сделанные во время записи снимка, остаются для журнала нового поколения
+            sessions.drainChanged((uuid, cooldownUntil, ips, ipUntil) -> { });
+            try (FileOutputStream fos = new FileOutputStream(tmp.toFile());
+                 DataOutputStream to = new DataOutputStream(new BufferedOutputStream(fos, 1 << 16))) {
+                to.writeInt(SNAPSHOT_MAGIC);
+                to.writeInt(VERSION);
+                to.writeLong(next);
+                IOException[] failed = {null};
+                sessions.forEachPersistent((uuid, cooldownUntil, ips, ipUntil) -> {
+                    if (failed[0] != null) return;
+                    try {
+                        writeRecord(to, uuid, cooldownUntil, ips, ipUntil);
+                    } catch (IOException e) {
+                        failed[0] = e;
+                    }
+                });
+                if (failed[0] != null) throw failed[0];
+                to.flush();
+                fos.getFD().sync();
+            }
+            Files.move(tmp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            generation = next;
+            openJournal(true);
+            logRecords = 0;
+            snapshotDue = false;
+        } catch (IOException e) {
+            // changed уже вычерпан — повторяем полный снимок, пока он не ляжет на диск
+            log.warning("Снимок сессий не записан: " + e.getMessage());
+            snapshotDue = true;
+        }
+    }
+
+    /** Снимок и закрытие журнала; onDisable. */
+    public synchronized void close(SessionService sessions) {
+        writeSnapshot(sessions);
+        closeJournal();
+    }
+
+    private void closeJournal() {
+        if (out == null) return;
+        try {
+            out.close();
+        } catch (IOException e) {
+            log.warning("Журнал сессий: закрытие: " + e.getMessage());
+        }
+        out = null;
+    }
+
+    private void openJournal(boolean truncate) throws IOException {
+        if (out != null) out.close();
+        Files.createDirectories(journal.toAbsolutePath().getParent());
+        boolean fresh = truncate || !Files.isRegularFile(journal) || Files.size(journal) < HEADER_BYTES;
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(journal.toFile(), !fresh)));
+        if (fresh) {
+            out.writeInt(LOG_MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(generation);
+            out.flush();
+        }
+        journalValid = true;
+    }
+
+    /** Только чтение: буфер не держит файл открытым, отображение снимет GC. */
+    private static ByteBuffer map(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            return ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+    }
+
+    /**
+     * Записи до конца буфера; неполный хвост (сервер упал посреди записи) отбрасывается,
+     * позиция буфера остаётся на его начале.
+     */
+    private static long replay(ByteBuffer buf, SessionService sessions, long now) {
+        long n = 0;
+        int start = buf.position();
+        try {
+            while (buf.hasRemaining()) {
+                start = buf.position();
+                UUID uuid = new UUID(buf.getLong(), buf.getLong());
+                long cooldownUntil = live(buf.getLong(), now);
+                int count = buf.get() & 0xFF;
+                String[] ips = new String[count];
+                long[] ipUntil = new long[count];
+                int kept = 0;
+                for (int i = 0; i < count; i++) {
+                    byte[] ip = new byte[buf.get() & 0xFF];
+                    buf.get(ip);
+                    long until = buf.getLong();
+                    if (until < now || kept >= SessionService.MAX_IP_COOLDOWNS) continue;
+                    ips[kept] = new String(ip, StandardCharsets.UTF_8);
+                    ipUntil[kept++] = until;
+                }
+                if (kept != count) {
+                    ips = Arrays.copyOf(ips, kept);
+                    ipUntil = Arrays.copyOf(ipUntil, kept);
+                }
+                sessions.restore(uuid, cooldownUntil, ips, ipUntil);
+                n++;
+            }
+        } catch (BufferUnderflowException e) {
+            buf.position(start);
+        }
+        return n;
+    }
+
+    private static long live(long until, long now) {
+        return until >= now ? until : 0L;
+    }
+
+    private static void writeRecord(DataOutputStream to, UUID uuid, long cooldownUntil,
+                                    String[] ips, long[] ipUntil) throws IOException {
+        to.writeLong(uuid.getMostSignificantBits());
+        to.writeLong(uuid.getLeastSignificantBits());
+        to.writeLong(cooldownUntil);
+        to.writeByte(ips.length);
+        for (int i = 0; i < ips.length; i++) {
+            byte[] ip = ips[i].getBytes(StandardCharsets.UTF_8);
+            to.writeByte(ip.length);
+            to.write(ip);
+            to.writeLong(ipUntil[i]);
+        }
+    }
+}
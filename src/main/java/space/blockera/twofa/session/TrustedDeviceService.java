@@ -3,18 +3,31 @@ package space.blockera.twofa.session;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.entity.Player;
+import space.blockera.twofa.storage.LoginStateRepository.LoginSnapshot;
 import space.blockera.twofa.storage.TrustedDeviceRepository;
-import space.blockera.twofa.storage.TrustedDeviceRepository.TrustedDeviceRecord;
+import space.blockera.twofa.storage.TrustedDeviceRepository.TrustedDevice;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
-import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
-
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Доверенные устройства держатся в памяти на время сессии игрока: индекс по отпечатку
+ * загружается один раз (обычно вместе со снимком pre-login), а last_used копится
+ * и пишется одним пакетом из {@link #flushTouches()}.
+ */
 public class TrustedDeviceService {
     private final TrustedDeviceRepository repository;
+    private final Map<UUID, Map<TrustedFingerprint, TrustedDevice>> index = new ConcurrentHashMap<>();
+    private final Set<Long> pendingTouches = ConcurrentHashMap.newKeySet();
     private final FloodgateDetector floodgateDetector;
     private boolean enabled;
     private Duration ttl;
@@ -37,7 +50,8 @@ public class TrustedDeviceService {
         this.ttl = Duration.ofDays(days);
     }
 
-    public boolean isTrusted(Player player) {
+    /** Проверка по снимку из pre-login: индекс строится из уже загруженных устройств, без запроса. */
+    public boolean isTrusted(Player player, LoginSnapshot snapshot) {
         if (!enabled) {
             return false;
         }
@@ -45,16 +59,29 @@ public class TrustedDeviceService {
         if (fingerprint == null) {
             return false;
         }
-        Optional<TrustedDeviceRecord> record = repository.find(player.getUniqueId(), fingerprint.ip(), fingerprint.locale(), fingerprint.platform());
-        if (record.isEmpty()) {
-            return false;
+        Map<TrustedFingerprint, TrustedDevice> devices = index.computeIfAbsent(player.getUniqueId(), k -> buildIndex(snapshot.devices()));
+        return match(devices, fingerprint);
+    }
+
+    /**
+     * Отпечаток снимается в основном потоке; устройства загружаются в I/O-пуле, только если
+     * индекса игрока ещё нет.
+     */
+    public CompletableFuture<Boolean> isTrustedAsync(Player player) {
+        if (!enabled) {
+            return CompletableFuture.completedFuture(false);
         }
-        Instant now = Instant.now();
-        if (record.get().trustedUntil().isBefore(now)) {
-            return false;
+        TrustedFingerprint fingerprint = fingerprint(player);
+        if (fingerprint == null) {
+            return CompletableFuture.completedFuture(false);
         }
-        repository.touch(record.get().id());
-        return true;
+        UUID uuid = player.getUniqueId();
+        Map<TrustedFingerprint, TrustedDevice> loaded = index.get(uuid);
+        if (loaded != null) {
+            return CompletableFuture.completedFuture(match(loaded, fingerprint));
+        }
+        return repository.findAllAsync(uuid)
+                .thenApply(list -> match(index.computeIfAbsent(uuid, k -> buildIndex(list)), fingerprint));
     }
 
     public void remember(Player player) {
@@ -65,11 +92,63 @@ public class TrustedDeviceService {
         if (fingerprint == null) {
             return;
         }
-        repository.upsert(player.getUniqueId(), fingerprint.ip(), fingerprint.locale(), fingerprint.platform(), Instant.now().plus(ttl));
+        UUID uuid = player.getUniqueId();
+        Instant until = Instant.now().plus(ttl);
+        repository.upsertAsync(uuid, fingerprint.ip(), fingerprint.locale(), fingerprint.platform(), until)
+                .thenAccept(id -> {
+                    Map<TrustedFingerprint, TrustedDevice> devices = index.get(uuid);
+                    if (devices == null) {
+                        return; // индекс не загружен — при загрузке строка придёт из БД
+                    }
+                    if (id > 0) {
+                        devices.put(fingerprint, new TrustedDevice(id, fingerprint.ip(), fingerprint.locale(), fingerprint.platform(), until));
+                    } else {
+                        index.remove(uuid, devices); // запись не удалась — перечитаем при следующей проверке
+                    }
+                });
     }
 
     public void forget(UUID uuid) {
-        repository.deleteAll(uuid);
+        // все устройства удаляются — загруженный индекс просто становится пустым
+        index.computeIfPresent(uuid, (k, devices) -> new ConcurrentHashMap<>());
+        repository.deleteAllAsync(uuid);
+    }
+
+    /** При выходе игрока; отложенные touch остаются в очереди. */
+    public void evict(UUID uuid) {
+        index.remove(uuid);
+    }
+
+    /** Вызывается асинхронным таймером и перед закрытием пула. */
+    public void flushTouches() {
+        if (pendingTouches.isEmpty()) {
+            return;
+        }
+        List<Long> ids = new ArrayList<>(pendingTouches);
+        pendingTouches.removeAll(ids);
+        if (!repository.touchAll(ids)) {
+            pendingTouches.addAll(ids);
+        }
+    }
+
+    private boolean match(Map<TrustedFingerprint, TrustedDevice> devices, TrustedFingerprint fingerprint) {
+        TrustedDevice device = devices.get(fingerprint);
+        if (device == null || device.trustedUntil().isBefore(Instant.now())) {
+            return false;
+        }
+        pendingTouches.add(device.id());
+        return true;
+    }
+
+    private static Map<TrustedFingerprint, TrustedDevice> buildIndex(List<TrustedDevice> devices) {
+        Map<TrustedFingerprint, TrustedDevice> map = new ConcurrentHashMap<>(Math.max(4, devices.size() * 2));
+        for (TrustedDevice device : devices) {
+            if (device.ip() == null || device.locale() == null || device.platform() == null) {
+                continue;
+            }
+            map.put(new TrustedFingerprint(device.ip(), device.locale(), device.platform()), device);
+        }
+        return map;
     }
 
     public boolean isEnabled() {
@@ -0,0 +1,36 @@
+package space.blockera.twofa.storage;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Всё, что нужно для решения при входе, одним обращением: флаг twofa_users,
+ * привязка Telegram с last_verified_at и все доверенные устройства игрока.
+ */
+public interface LoginStateRepository {
+
+    record LoginSnapshot(UUID playerUuid,
+                         String ip,
+                         boolean enabled,
+                         byte[] secret,
+                         int totpDrift,
+                         TelegramLinkRepository.TgLink link,
+                         Instant telegramVerifiedAt,
+                         List<TrustedDeviceRepository.TrustedDevice> devices,
+                         long loadedAtMillis) {
+
+        public boolean telegramLinked() {
+            return link != null;
+        }
+
+        /** То же, что TelegramSessionRepository.isCooldownOk, но без запроса. */
+        public boolean telegramCooldownOk(long minutes) {
+            if (minutes <= 0 || telegramVerifiedAt == null) return false;
+            return telegramVerifiedAt.plusSeconds(minutes * 60).isAfter(Instant.now());
+        }
+    }
+
+    /** @return снимок или null, если хранилище недоступно (тогда вход проверяется обычным путём). */
+    LoginSnapshot load(UUID uuid, String ip);
+}
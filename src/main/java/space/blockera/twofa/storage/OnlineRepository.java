@@ -1,55 +1,32 @@
-// src/main/java/space/blockera/twofa/storage/OnlineRepository.java
 package space.blockera.twofa.storage;
 
-import javax.sql.DataSource;
-import java.sql.*;
+import java.sql.SQLException;
+import java.util.List;
 import java.util.UUID;
+import java.util.function.Predicate;
 
-public class OnlineRepository {
-    private final DataSource ds;
-    public OnlineRepository(DataSource ds) { this.ds = ds; }
+/** tg_online и очередь tg_actions — общие с внешним Telegram-ботом. */
+public interface OnlineRepository {
 
-    public void upsertOnline(UUID uuid, String name, boolean online, String world, String server) throws SQLException {
-        try (Connection c = ds.getConnection();
-             PreparedStatement ps = c.prepareStatement(
-                 "INSERT INTO tg_online (uuid,name,online,last_seen,last_world,last_server) " +
-                 "VALUES (?,?,?,?,?,?) " +
-                 "ON DUPLICATE KEY UPDATE name=VALUES(name), online=VALUES(online), last_seen=VALUES(last_seen), " +
-                 "last_world=VALUES(last_world), last_server=VALUES(last_server)")) {
-            Timestamp now = new Timestamp(System.currentTimeMillis());
-            ps.setString(1, uuid.toString());
-            ps.setString(2, name);
-            ps.setInt(3, online ? 1 : 0);
-            ps.setTimestamp(4, now);
-            ps.setString(5, world);
-            ps.setString(6, server);
-            ps.executeUpdate();
-        }
-    }
+    record PresenceRow(UUID uuid, String name, boolean online, long lastSeenMillis, String world) { }
+
+    /** settled — строка старше orphanGraceSeconds по часам хранилища. */
+    record LogoutAction(long id, UUID playerUuid, String reason, boolean settled) { }
 
-    public void markOffline(UUID uuid) throws SQLException {
-        try (Connection c = ds.getConnection();
-             PreparedStatement ps = c.prepareStatement(
-                 "UPDATE tg_online SET online=0, last_seen=NOW() WHERE uuid=?")) {
-            ps.setString(1, uuid.toString());
-            ps.executeUpdate();
+    /** Итог одного захвата: acked уже помечены обработанными, deferred остались в очереди. */
+    record LogoutClaim(List<LogoutAction> acked, List<LogoutAction> deferred) {
+        public boolean isEmpty() {
+            return acked.isEmpty() && deferred.isEmpty();
         }
     }
 
-    public ResultSet fetchPendingLogout(Connection c) throws SQLException {
-        PreparedStatement ps = c.prepareStatement(
-            "SELECT id, player_uuid, reason FROM tg_actions " +
-            "WHERE action='LOGOUT' AND processed_at IS NULL ORDER BY id ASC LIMIT 50",
-            ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_UPDATABLE);
-        return ps.executeQuery();
-    }
+    /** Одна запись на пачку игроков вместо запроса на каждого. */
+    void upsertBatch(List<PresenceRow> rows, String server) throws SQLException;
 
-    public void markProcessed(long id) throws SQLException {
-        try (Connection c = ds.getConnection();
-             PreparedStatement ps = c.prepareStatement(
-                 "UPDATE tg_actions SET processed_at=NOW() WHERE id=?")) {
-            ps.setLong(1, id);
-            ps.executeUpdate();
-        }
-    }
+    /**
+     * Забирает пачку LOGOUT-строк этого сервера и «ничьих» строк старше orphanGraceSeconds.
+     * Строки, для которых ack вернул false, остаются необработанными.
+     */
+    LogoutClaim claimLogouts(String server, long afterId, int limit, long orphanGraceSeconds,
+                             Predicate<LogoutAction> ack) throws SQLException;
 }
@@ -0,0 +1,129 @@
+package space.blockera.twofa.storage;
+
+import space.blockera.twofa.storage.OnlineRepository.PresenceRow;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Отложенная запись tg_online: события join/quit/смены мира только помечают игрока
+ * «грязным», а flush раз в интервал отправляет изменившиеся строки пачками.
+ * Несколько событий одного игрока внутри окна схлопываются в одну строку.
+ */
+public class PresenceBuffer {
+    private record Presence(String name, boolean online, String world, long seenAt) { }
+
+    private final Map<UUID, Presence> current = new ConcurrentHashMap<>();
+    private final Map<UUID, Long> lastWritten = new ConcurrentHashMap<>();
+    private final Set<UUID> dirty = ConcurrentHashMap.newKeySet();
+    private final Logger log;
+    private final String server;
+
+    private volatile OnlineRepository repo;
+    private volatile int batchSize;
+    private volatile long heartbeatMillis;
+
+    public PresenceBuffer(OnlineRepository repo, String server, Logger log) {
+        this.repo = repo;
+        this.server = server;
+        this.log = log;
+    }
+
+    public void rewire(OnlineRepository repo) {
+        this.repo = repo;
+    }
+
+    public void configure(int batchSize, long heartbeatSeconds) {
+        this.batchSize = Math.max(1, batchSize);
+        this.heartbeatMillis = Math.max(1L, heartbeatSeconds) * 1000L;
+    }
+
+    public void markOnline(UUID uuid, String name, String world) {
+        current.put(uuid, new Presence(name, true, world, System.currentTimeMillis()));
+        dirty.add(uuid);
+    }
+
+    public void markOffline(UUID uuid, String name, String world) {
+        current.put(uuid, new Presence(name, false, world, System.currentTimeMillis()));
+        dirty.add(uuid);
+    }
+
+    /** Игрок сейчас на этом сервере (потокобезопасно, без обращения к Bukkit). */
+    public boolean isOnline(UUID uuid) {
+        Presence p = current.get(uuid);
+        return p != null && p.online();
+    }
+
+    /** Вызывается из асинхронного таймера; пишет только изменившихся и тех, у кого устарел last_seen. */
+    public void flush() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<UUID, Presence> e : current.entrySet()) {
+            if (!e.getValue().online() || dirty.contains(e.getKey())) continue;
+            Long written = lastWritten.get(e.getKey());
+            if (written == null || now - written >= heartbeatMillis) {
+                dirty.add(e.getKey());
+            }
+        }
+        if (dirty.isEmpty()) return;
+
+        int capacity = Math.min(batchSize, dirty.size());
+        List<UUID> batchKeys = new ArrayList<>(capacity);
+        List<PresenceRow> batch = new ArrayList<>(capacity);
+        List<UUID> retry = new ArrayList<>();
+        Iterator<UUID> it = dirty.iterator();
+        while (it.hasNext()) {
+            UUID uuid = it.next();
+            it.remove();
+            Presence p = current.get(uuid);
+            if (p == null) continue;
+            batchKeys.add(uuid);
+            batch.add(new PresenceRow(uuid, p.name(), p.online(), p.online() ? now : p.seenAt(), p.world()));
+            if (batch.size() >= batchSize) {
+                if (!write(batchKeys, batch, now)) retry.addAll(batchKeys);
+                batchKeys.clear();
+                batch.clear();
+            }
+        }
+        if (!write(batchKeys, batch, now)) retry.addAll(batchKeys);
+        dirty.addAll(retry); // повторим в следующем окне
+    }
+
+    /** При выключении плагина: все ещё отмеченные онлайн уходят в offline одной записью. */
+    public void shutdown() {
+        for (Map.Entry<UUID, Presence> e : current.entrySet()) {
+            Presence p = e.getValue();
+            if (p.online()) {
+                markOffline(e.getKey(), p.name(), p.world());
+            }
+        }
+        flush();
+    }
+
+    private boolean write(List<UUID> keys, List<PresenceRow> rows, long now) {
+        if (rows.isEmpty()) return true;
+        try {
+            repo.upsertBatch(rows, server);
+        } catch (Exception ex) {
+            log.warning("tg_online batch upsert (" + rows.size() + "): " + ex.getMessage());
+            return false;
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            UUID uuid = keys.get(i);
+            PresenceRow row = rows.get(i);
+            if (row.online()) {
+                lastWritten.put(uuid, now);
+            } else {
+                lastWritten.remove(uuid);
+                // вышедших держим только до записи, если за окно игрок не вернулся
+                current.computeIfPresent(uuid, (k, p) -> p.online() ? p : null);
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,138 @@
+package space.blockera.twofa.storage;
+
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+
+/**
+ * Ограниченный LRU-кэш с TTL для состояния игроков. Значение, загруженное до
+ * записи, не попадёт в кэш после её инвалидации: загрузка запоминает stamp(key),
+ * а putIfFresh отбрасывает результат, если с тех пор была инвалидация. Счётчики
+ * инвалидаций разбиты на полосы по хешу ключа: запись одного игрока не сбрасывает
+ * загрузки остальных; общий счётчик — только для пакетных изменений.
+ * Истёкшие записи не удаляются до вытеснения: {@link #getStale} отдаёт их,
+ * когда хранилище недоступно.
+ */
+public class StateCache<K, V> {
+
+    public record Stats(long hits, long misses, int size) { }
+
+    /** storage.cache: TTL найденных записей, TTL «записи нет» и предел размера. */
+    public record Settings(long ttlMillis, long negativeTtlMillis, int maxEntries) {
+        public static Settings fromConfig(FileConfiguration cfg) {
+            return new Settings(
+                    Math.max(0L, cfg.getLong("storage.cache.ttl_seconds", 120L)) * 1000L,
+                    Math.max(0L, cfg.getLong("storage.cache.negative_ttl_seconds", 15L)) * 1000L,
+                    Math.max(1, cfg.getInt("storage.cache.max_entries", 10000)));
+        }
+    }
+
+    private record Entry<V>(V value, long expiresAt) { }
+
+    private static final int STRIPES = 1024;
+
+    private final int maxEntries;
+    private final LinkedHashMap<K, Entry<V>> entries;
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLongArray keyInvalidations = new AtomicLongArray(STRIPES);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public StateCache(int maxEntries) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.entries = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                return size() > StateCache.this.maxEntries;
+            }
+        };
+    }
+
+    /** @return значение или null при промахе/истечении TTL. */
+    public V get(K key) {
+        Entry<V> entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null && entry.expiresAt() <= System.currentTimeMillis()) {
+                entry = null;
+            }
+        }
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.value();
+    }
+
+    /** Последнее известное значение, даже с истёкшим TTL; null — не загружалось или инвалидировано. */
+    public V getStale(K key) {
+        synchronized (entries) {
+            Entry<V> entry = entries.get(key);
+            return entry == null ? null : entry.value();
+        }
+    }
+
+    /** Снять перед загрузкой key из БД и передать в {@link #putIfFresh}. */
+    public long stamp(K key) {
+        // оба счётчика только растут, поэтому сумма меняется при любой инвалидации
+        return invalidations.get() + keyInvalidations.get(stripe(key));
+    }
+
+    public void putIfFresh(K key, V value, long stamp, long ttlMillis) {
+        if (ttlMillis <= 0) return;
+        long expiresAt = System.currentTimeMillis() + ttlMillis;
+        synchronized (entries) {
+            if (stamp(key) != stamp) return;
+            entries.put(key, new Entry<>(value, expiresAt));
+        }
+    }
+
+    public void invalidate(K key) {
+        synchronized (entries) {
+            keyInvalidations.incrementAndGet(stripe(key));
+            entries.remove(key);
+        }
+    }
+
+    /**
+     * Заменить закэшированное значение, сохранив его срок; загрузки key, начатые раньше,
+     * отбрасываются. Записи нет — ничего не делает.
+     */
+    public void update(K key, UnaryOperator<V> change) {
+        synchronized (entries) {
+            keyInvalidations.incrementAndGet(stripe(key));
+            Entry<V> entry = entries.get(key);
+            if (entry != null) entries.put(key, new Entry<>(change.apply(entry.value()), entry.expiresAt()));
+        }
+    }
+
+    /** Пакетное изменение (перешифровка): один общий сброс вместо инвалидации по ключу. */
+    public void invalidateAll(Collection<K> keys) {
+        synchronized (entries) {
+            invalidations.incrementAndGet();
+            for (K key : keys) {
+                entries.remove(key);
+            }
+        }
+    }
+
+    private static int stripe(Object key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+
+    public Stats stats() {
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        return new Stats(hits.sum(), misses.sum(), size);
+    }
+}
@@ -0,0 +1,86 @@
+package space.blockera.twofa.storage;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Ограниченный пул потоков для JDBC-запросов. Размер равен maximumPoolSize Hikari,
+ * поэтому задачи не простаивают в ожидании соединения, а основной поток сервера
+ * никогда не ходит в БД сам.
+ */
+public class StorageExecutor {
+    private static final int QUEUE_PER_THREAD = 256;
+
+    private final Logger log;
+    private final ThreadPoolExecutor io;
+    private final Executor mainThread;
+
+    public StorageExecutor(Plugin plugin, int threads) {
+        this.log = plugin.getLogger();
+        int size = Math.max(1, threads);
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory factory = r -> {
+            Thread t = new Thread(r, "BlockEraTwoFA-IO-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+        this.io = new ThreadPoolExecutor(size, size, 30L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(size * QUEUE_PER_THREAD), factory, new ThreadPoolExecutor.AbortPolicy());
+        this.io.allowCoreThreadTimeOut(true);
+        this.mainThread = task -> {
+            if (Bukkit.isPrimaryThread()) {
+                task.run();
+            } else if (plugin.isEnabled()) {
+                Bukkit.getScheduler().runTask(plugin, task);
+            }
+        };
+    }
+
+    /** Выполнить запрос в I/O-пуле. */
+    public <T> CompletableFuture<T> supply(Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, io);
+        } catch (RejectedExecutionException ex) {
+            log.warning("Очередь запросов к БД переполнена: " + ex.getMessage());
+            return CompletableFuture.failedFuture(ex);
+        }
+    }
+
+    /** Выполнить запрос без результата в I/O-пуле. */
+    public CompletableFuture<Void> run(Runnable task) {
+        return supply(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /** Executor основного потока: для вызовов Bukkit API по готовности результата. */
+    public Executor mainThread() {
+        return mainThread;
+    }
+
+    /** Дождаться уже поставленных запросов (не дольше пары секунд) и остановить пул. */
+    public void shutdown() {
+        io.shutdown();
+        try {
+            if (!io.awaitTermination(5, TimeUnit.SECONDS)) {
+                log.warning("Не все запросы к БД завершились до остановки пула.");
+                io.shutdownNow();
+            }
+        } catch (InterruptedException ex) {
+            io.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package space.blockera.twofa.storage;
+
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.plugin.Plugin;
+import space.blockera.twofa.storage.embedded.EmbeddedStorageProvider;
+import space.blockera.twofa.storage.mysql.MysqlStorageProvider;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Бэкенд хранилища: набор репозиториев, I/O-пул и фоновое обслуживание.
+ * Выбирается по storage.type: mysql — общая БД сети (и Telegram-бота),
+ * embedded — файл на диске сервера для лобби и тестовых серверов без сети.
+ */
+public interface StorageProvider extends AutoCloseable {
+
+    UserRepository users();
+
+    TelegramLinkRepository telegramLinks();
+
+    ChallengeRepository challenges();
+
+    TelegramSessionRepository telegramSessions();
+
+    TrustedDeviceRepository trustedDevices();
+
+    OnlineRepository online();
+
+    LoginStateRepository loginStates();
+
+    StorageExecutor executor();
+
+    /**
+     * Очистка просроченных записей (и уплотнение, если бэкенд его делает); асинхронный таймер.
+     * @param keepRunning false — прервать между порциями (плагин выключается)
+     */
+    void maintenance(BooleanSupplier keepRunning);
+
+    /** Сколько записей удалено с момента запуска, по таблицам. */
+    Map<String, Long> purgedCounts();
+
+    /** Дождаться запросов I/O-пула и освободить ресурсы. */
+    @Override
+    void close();
+
+    /** Медленная часть (пул, миграции, чтение файла) — вызывать вне основного потока. */
+    static StorageProvider open(Plugin plugin, FileConfiguration cfg) {
+        String type = cfg.getString("storage.type", "mysql").trim().toLowerCase(Locale.ROOT);
+        return switch (type) {
+            case "mysql" -> MysqlStorageProvider.open(plugin, cfg);
+            case "embedded" -> EmbeddedStorageProvider.open(plugin, cfg);
+            default -> throw new IllegalArgumentException("Неизвестный storage.type: " + type + " (mysql | embedded)");
+        };
+    }
+}
@@ -0,0 +1,12 @@
+package space.blockera.twofa.storage;
+
+/**
+ * Хранилище не ответило, а локального (пусть и устаревшего) состояния игрока нет.
+ * Вызывающий решает сам, см. storage.breaker.degraded_policy; молча подставлять
+ * «2FA выключена» / «не привязан» нельзя — так сбой БД пропускал бы всех.
+ */
+public class StorageUnavailableException extends RuntimeException {
+    public StorageUnavailableException(String what, Throwable cause) {
+        super(what + ": хранилище недоступно", cause);
+    }
+}
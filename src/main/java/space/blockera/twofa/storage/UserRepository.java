@@ -1,93 +1,66 @@
 package space.blockera.twofa.storage;
 
-import javax.sql.DataSource;
-import java.sql.*;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
-import java.util.logging.Logger;
-
-public class UserRepository {
-    private final DataSource ds;
-    private final Logger log;
-
-    public UserRepository(DataSource ds, Logger log) {
-        this.ds = ds;
-        this.log = log;
-        initSchema();
-    }
-
-    public void initSchema() {
-        String users = "CREATE TABLE IF NOT EXISTS twofa_users (" +
-                "uuid BINARY(16) PRIMARY KEY, " +
-                "enabled TINYINT(1) NOT NULL DEFAULT 0, " +
-                "secret VARBINARY(512) NULL, " +
-                "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
-                ")";
-        try (Connection c = ds.getConnection(); Statement st = c.createStatement()) {
-            st.execute(users);
-        } catch (SQLException e) {
-            log.severe("Не удалось инициализировать схему twofa_users: " + e.getMessage());
-        }
-    }
-
-    public boolean isEnabled(UUID uuid) {
-        String sql = "SELECT enabled FROM twofa_users WHERE uuid=?";
-        try (Connection c = ds.getConnection(); PreparedStatement ps = c.prepareStatement(sql)) {
-            ps.setBytes(1, uuidToBytes(uuid));
-            try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) return rs.getBoolean(1);
-                return false;
-            }
-        } catch (SQLException e) {
-            log.warning("isEnabled: " + e.getMessage());
-            return false;
-        }
-    }
-
-    public Optional<byte[]> getSecret(UUID uuid) {
-        String sql = "SELECT secret FROM twofa_users WHERE uuid=?";
-        try (Connection c = ds.getConnection(); PreparedStatement ps = c.prepareStatement(sql)) {
-            ps.setBytes(1, uuidToBytes(uuid));
-            try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) return Optional.ofNullable(rs.getBytes(1));
-                return Optional.empty();
-            }
-        } catch (SQLException e) {
-            log.warning("getSecret: " + e.getMessage());
-            return Optional.empty();
-        }
-    }
-
-    public void upsertSecret(UUID uuid, byte[] secretBytes, boolean enabled) {
-        String sql = "INSERT INTO twofa_users(uuid, secret, enabled) VALUES(?,?,?) " +
-                "ON DUPLICATE KEY UPDATE secret=VALUES(secret), enabled=VALUES(enabled)";
-        try (Connection c = ds.getConnection(); PreparedStatement ps = c.prepareStatement(sql)) {
-            ps.setBytes(1, uuidToBytes(uuid));
-            ps.setBytes(2, secretBytes);
-            ps.setBoolean(3, enabled);
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            log.warning("upsertSecret: " + e.getMessage());
-        }
-    }
-
-    public void setEnabled(UUID uuid, boolean enabled) {
-        String sql = "UPDATE twofa_users SET enabled=? WHERE uuid=?";
-        try (Connection c = ds.getConnection(); PreparedStatement ps = c.prepareStatement(sql)) {
-            ps.setBoolean(1, enabled);
-            ps.setBytes(2, uuidToBytes(uuid));
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            log.warning("setEnabled: " + e.getMessage());
-        }
-    }
-
-    private static byte[] uuidToBytes(UUID uuid) {
-        long msb = uuid.getMostSignificantBits();
-        long lsb = uuid.getLeastSignificantBits();
-        byte[] buffer = new byte[16];
-        for (int i = 0; i < 8; i++) buffer[i] = (byte) (msb >>> (8 * (7 - i)));
-        for (int i = 0; i < 8; i++) buffer[8 + i] = (byte) (lsb >>> (8 * (7 - i)));
-        return buffer;
-    }
-}
\ No newline at end of file
+import java.util.concurrent.CompletableFuture;
+
+/** twofa_users: флаг включённой 2FA, зашифрованный секрет и сдвиг часов игрока. */
+public interface UserRepository {
+
+    /** @throws StorageUnavailableException БД не ответила, а в кэше об игроке ничего нет */
+    boolean isEnabled(UUID uuid);
+
+    Optional<byte[]> getSecret(UUID uuid);
+
+    void upsertSecret(UUID uuid, byte[] secretBytes, boolean enabled);
+
+    void setEnabled(UUID uuid, boolean enabled);
+
+    /** Сдвиг шага TOTP, на котором игрок последний раз ввёл верный код; 0 — неизвестен. */
+    int getDrift(UUID uuid);
+
+    /** Запомнить сдвиг; если он не изменился, записи нет. Новый секрет сбрасывает сдвиг в 0. */
+    void setDrift(UUID uuid, int drift);
+
+    /** Заполнить кэш строкой, прочитанной в pre-login (stamp снят до запроса). */
+    void prime(UUID uuid, boolean enabled, byte[] secret, int drift, long stamp);
+
+    /** Секрет строки, как он лежит в хранилище. */
+    record StoredSecret(UUID uuid, byte[] secret) { }
+
+    /** Заменить секрет, если в строке всё ещё expected. */
+    record SecretRewrite(UUID uuid, byte[] expected, byte[] replacement) { }
+
+    /**
+     * Порция строк с секретом по возрастанию первичного ключа, строго после after (keyset-пагинация).
+     * @param after null — с начала таблицы
+     * @throws StorageUnavailableException хранилище не ответило
+     */
+    List<StoredSecret> secretsAfter(UUID after, int limit);
+
+    /**
+     * Порция замен одной транзакцией. Строки, секрет которых изменился после чтения
+     * (/2fa setup, отключение), пропускаются.
+     * @return сколько строк заменено
+     * @throws StorageUnavailableException хранилище не ответило, порция не записана
+     */
+    int rewriteSecrets(List<SecretRewrite> batch);
+
+    /** Снять перед чтением строки игрока для {@link #prime}. */
+    long cacheStamp(UUID uuid);
+
+    StateCache.Stats cacheStats();
+
+    // ===== async =====
+
+    CompletableFuture<Boolean> isEnabledAsync(UUID uuid);
+
+    CompletableFuture<Optional<byte[]>> getSecretAsync(UUID uuid);
+
+    CompletableFuture<Void> upsertSecretAsync(UUID uuid, byte[] secretBytes, boolean enabled);
+
+    CompletableFuture<Void> setEnabledAsync(UUID uuid, boolean enabled);
+
+    CompletableFuture<Void> setDriftAsync(UUID uuid, int drift);
+}
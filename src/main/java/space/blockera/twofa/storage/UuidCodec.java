@@ -0,0 +1,38 @@
+package space.blockera.twofa.storage;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.UUID;
+
+/**
+ * UUID ⇄ BINARY(16) (старшие 8 байт, затем младшие, big-endian — как UNHEX(REPLACE(uuid,'-',''))).
+ * Без промежуточных строк и ByteBuffer: чтение создаёт только сам UUID.
+ */
+public final class UuidCodec {
+    public static final int BYTES = 16;
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private UuidCodec() { }
+
+    public static byte[] toBytes(UUID uuid) {
+        byte[] out = new byte[BYTES];
+        write(uuid, out, 0);
+        return out;
+    }
+
+    public static void write(UUID uuid, byte[] dst, int offset) {
+        LONGS.set(dst, offset, uuid.getMostSignificantBits());
+        LONGS.set(dst, offset + 8, uuid.getLeastSignificantBits());
+    }
+
+    /** @return null, если в колонке NULL. */
+    public static UUID fromBytes(byte[] src) {
+        return src == null ? null : fromBytes(src, 0);
+    }
+
+    public static UUID fromBytes(byte[] src, int offset) {
+        return new UUID((long) LONGS.get(src, offset), (long) LONGS.get(src, offset + 8));
+    }
+}
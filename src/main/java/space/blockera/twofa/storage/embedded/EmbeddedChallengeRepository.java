@@ -0,0 +1,71 @@
+package space.blockera.twofa.storage.embedded;
+
+import space.blockera.twofa.storage.ChallengeRepository;
+import space.blockera.twofa.storage.StorageExecutor;
+
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static space.blockera.twofa.storage.embedded.EmbeddedStore.instant;
+import static space.blockera.twofa.storage.embedded.EmbeddedStore.millis;
+
+/** tg_challenges в журнале, ключ — токен. */
+public class EmbeddedChallengeRepository implements ChallengeRepository {
+    static final int TABLE = 3;
+
+    private final EmbeddedStore store;
+    private final StorageExecutor io;
+    private final EmbeddedStore.Table<Challenge> rows;
+
+    EmbeddedChallengeRepository(EmbeddedStore store, StorageExecutor io) {
+        this.store = store;
+        this.io = io;
+        this.rows = store.table(TABLE,
+                c -> new String[]{c.playerUuid().toString(), c.playerName(), c.token(), millis(c.expiresAt())},
+                f -> new Challenge(UUID.fromString(f[0]), f[1], f[2], instant(f[3])));
+    }
+
+    @Override
+    public void create(UUID uuid, String playerName, String token, Instant expiresAt) {
+        store.put(rows, token, new Challenge(uuid, playerName, token, expiresAt));
+    }
+
+    @Override
+    public Optional<Challenge> findValidByToken(String token) {
+        Challenge c = rows.get(token);
+        return c != null && c.expiresAt().isAfter(Instant.now()) ? Optional.of(c) : Optional.empty();
+    }
+
+    @Override
+    public void delete(String token) {
+        store.remove(rows, token);
+    }
+
+    /** @return сколько просроченных токенов удалено. */
+    long purgeExpired(Instant now) {
+        long n = 0;
+        for (String key : rows.view().keySet()) {
+            if (store.removeIf(rows, key, r -> r.expiresAt().isBefore(now))) n++;
+        }
+        return n;
+    }
+
+    // ===== async =====
+
+    @Override
+    public CompletableFuture<Void> createAsync(UUID uuid, String playerName, String token, Instant expiresAt) {
+        return io.run(() -> create(uuid, playerName, token, expiresAt));
+    }
+
+    @Override
+    public CompletableFuture<Optional<Challenge>> findValidByTokenAsync(String token) {
+        return io.supply(() -> findValidByToken(token));
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteAsync(String token) {
+        return io.run(() -> delete(token));
+    }
+}
@@ -0,0 +1,33 @@
+package space.blockera.twofa.storage.embedded;
+
+import space.blockera.twofa.storage.LoginStateRepository;
+
+import java.util.UUID;
+
+/** Снимок для входа собирается из индексов в памяти — без единого обращения к диску. */
+public class EmbeddedLoginStateRepository implements LoginStateRepository {
+    private final EmbeddedUserRepository users;
+    private final EmbeddedTelegramLinkRepository links;
+    private final EmbeddedTrustedDeviceRepository devices;
+
+    EmbeddedLoginStateRepository(EmbeddedUserRepository users, EmbeddedTelegramLinkRepository links,
+                                 EmbeddedTrustedDeviceRepository devices) {
+        this.users = users;
+        this.links = links;
+        this.devices = devices;
+    }
+
+    @Override
+    public LoginSnapshot load(UUID uuid, String ip) {
+        EmbeddedUserRepository.UserRow user = users.row(uuid);
+        EmbeddedTelegramLinkRepository.LinkRow link = links.row(uuid);
+        return new LoginSnapshot(uuid, ip,
+                user != null && user.enabled(),
+                user != null ? user.secret() : null,
+                user != null ? user.drift() : 0,
+                link != null ? link.link() : null,
+                link != null ? link.lastVerifiedAt() : null,
+                devices.findAll(uuid),
+                System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,23 @@
+package space.blockera.twofa.storage.embedded;
+
+import space.blockera.twofa.storage.OnlineRepository;
+
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * tg_online и tg_actions нужны только внешнему Telegram-боту, который читает общую MySQL.
+ * Во встроенном хранилище его нет: присутствие не пишется, очередь выхода всегда пуста.
+ */
+public class EmbeddedOnlineRepository implements OnlineRepository {
+    private static final LogoutClaim EMPTY = new LogoutClaim(List.of(), List.of());
+
+    @Override
+    public void upsertBatch(List<PresenceRow> rows, String server) { }
+
+    @Override
+    public LogoutClaim claimLogouts(String server, long afterId, int limit, long orphanGraceSeconds,
+                                    Predicate<LogoutAction> ack) {
+        return EMPTY;
+    }
+}
@@ -0,0 +1,112 @@
+package space.blockera.twofa.storage.embedded;
+
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.plugin.Plugin;
+import space.blockera.twofa.storage.ChallengeRepository;
+import space.blockera.twofa.storage.LoginStateRepository;
+import space.blockera.twofa.storage.OnlineRepository;
+import space.blockera.twofa.storage.StorageExecutor;
+import space.blockera.twofa.storage.StorageProvider;
+import space.blockera.twofa.storage.TelegramLinkRepository;
+import space.blockera.twofa.storage.TelegramSessionRepository;
+import space.blockera.twofa.storage.TrustedDeviceRepository;
+import space.blockera.twofa.storage.UserRepository;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Встроенное хранилище для одиночных серверов (лобби, тест): журнал в папке плагина,
+ * все чтения из памяти, сети нет. Telegram-бот с ним не работает — он читает MySQL.
+ */
+public class EmbeddedStorageProvider implements StorageProvider {
+    /** Записи журнала пишутся из I/O-пула по одной, больше потоков не нужно. */
+    private static final int IO_THREADS = 2;
+
+    private final EmbeddedStore store;
+    private final StorageExecutor io;
+    private final EmbeddedUserRepository users;
+    private final EmbeddedTelegramLinkRepository links;
+    private final EmbeddedChallengeRepository challenges;
+    private final EmbeddedTelegramSessionRepository sessions;
+    private final EmbeddedTrustedDeviceRepository devices;
+    private final OnlineRepository online = new EmbeddedOnlineRepository();
+    private final LoginStateRepository loginStates;
+    private final Map<String, AtomicLong> purged = new LinkedHashMap<>();
+    private final long sessionRetentionHours;
+    private final double compactRatio;
+    private final long compactMinRecords;
+
+    private EmbeddedStorageProvider(Plugin plugin, FileConfiguration cfg) {
+        Path file = plugin.getDataFolder().toPath().resolve(cfg.getString("storage.embedded.file", "storage/twofa.log"));
+        this.store = new EmbeddedStore(file, cfg.getBoolean("storage.embedded.fsync", false), plugin.getLogger());
+        this.io = new StorageExecutor(plugin, IO_THREADS);
+        this.users = new EmbeddedUserRepository(store, io);
+        this.links = new EmbeddedTelegramLinkRepository(store, io);
+        this.challenges = new EmbeddedChallengeRepository(store, io);
+        this.sessions = new EmbeddedTelegramSessionRepository(store, io, links);
+        this.devices = new EmbeddedTrustedDeviceRepository(store, io);
+        this.loginStates = new EmbeddedLoginStateRepository(users, links, devices);
+        this.sessionRetentionHours = Math.max(0L, cfg.getLong("storage.janitor.tg_sessions_retention_hours", 24L));
+        this.compactRatio = Math.max(1.0, cfg.getDouble("storage.embedded.compact_ratio", 2.0));
+        this.compactMinRecords = Math.max(0L, cfg.getLong("storage.embedded.compact_min_records", 1000L));
+        for (String table : new String[]{"tg_challenges", "tg_sessions", "twofa_trusted_devices"}) {
+            purged.put(table, new AtomicLong());
+        }
+    }
+
+    /** Чтение журнала с диска. Любой поток, кроме основного. */
+    public static EmbeddedStorageProvider open(Plugin plugin, FileConfiguration cfg) {
+        EmbeddedStorageProvider provider = new EmbeddedStorageProvider(plugin, cfg);
+        try {
+            provider.store.open();
+        } catch (IOException e) {
+            provider.io.shutdown();
+            throw new IllegalStateException("embedded: " + e.getMessage(), e);
+        }
+        provider.sessions.afterOpen();
+        provider.devices.afterOpen();
+        return provider;
+    }
+
+    @Override public UserRepository users() { return users; }
+    @Override public TelegramLinkRepository telegramLinks() { return links; }
+    @Override public ChallengeRepository challenges() { return challenges; }
+    @Override public TelegramSessionRepository telegramSessions() { return sessions; }
+    @Override public TrustedDeviceRepository trustedDevices() { return devices; }
+    @Override public OnlineRepository online() { return online; }
+    @Override public LoginStateRepository loginStates() { return loginStates; }
+    @Override public StorageExecutor executor() { return io; }
+
+    @Override
+    public void maintenance(BooleanSupplier keepRunning) {
+        Instant now = Instant.now();
+        if (!keepRunning.getAsBoolean()) return;
+        purged.get("tg_challenges").addAndGet(challenges.purgeExpired(now));
+        if (!keepRunning.getAsBoolean()) return;
+        purged.get("tg_sessions").addAndGet(sessions.purgeExpired(now.minusSeconds(sessionRetentionHours * 3600L)));
+        if (!keepRunning.getAsBoolean()) return;
+        purged.get("twofa_trusted_devices").addAndGet(devices.purgeExpired(now));
+        if (!keepRunning.getAsBoolean()) return;
+        store.compactIfNeeded(compactRatio, compactMinRecords);
+    }
+
+    @Override
+    public Map<String, Long> purgedCounts() {
+        Map<String, Long> out = new LinkedHashMap<>();
+        purged.forEach((table, count) -> out.put(table, count.get()));
+        return out;
+    }
+
+    @Override
+    public void close() {
+        // сначала дожидаемся отложенных записей, потом закрываем журнал
+        io.shutdown();
+        store.close();
+    }
+}
@@ -0,0 +1,264 @@
+package space.blockera.twofa.storage.embedded;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Журнал только на дозапись плюс индекс в памяти. Каждая запись журнала — PUT или DEL
+ * одной строки таблицы; при открытии журнал проигрывается в ConcurrentHashMap, и дальше
+ * все чтения идут из памяти без блокировок. Записи сериализуются монитором хранилища.
+ * Когда мёртвых записей становится много, журнал переписывается снимком живых строк
+ * во временный файл, который атомарно заменяет старый.
+ */
+final class EmbeddedStore {
+    private static final int MAGIC = 0x42453246; // "BE2F"
+    private static final int VERSION = 1;
+    private static final byte OP_PUT = 1;
+    private static final byte OP_DEL = 2;
+
+    /** Таблица: строки по ключу и преобразование значения в поля журнала и обратно. */
+    static final class Table<V> {
+        private final byte id;
+        private final Function<V, String[]> encode;
+        private final Function<String[], V> decode;
+        private final ConcurrentHashMap<String, V> rows = new ConcurrentHashMap<>();
+
+        private Table(byte id, Function<V, String[]> encode, Function<String[], V> decode) {
+            this.id = id;
+            this.encode = encode;
+            this.decode = decode;
+        }
+
+        V get(String key) { return rows.get(key); }
+
+        Collection<V> values() { return rows.values(); }
+
+        Map<String, V> view() { return rows; }
+
+        int size() { return rows.size(); }
+    }
+
+    private final Path file;
+    private final boolean fsync;
+    private final Logger log;
+    private final Map<Byte, Table<?>> tables = new HashMap<>();
+
+    private FileOutputStream fileOut;
+    private DataOutputStream out;
+    private long records;
+
+    EmbeddedStore(Path file, boolean fsync, Logger log) {
+        this.file = file;
+        this.fsync = fsync;
+        this.log = log;
+    }
+
+    /** Регистрировать таблицы нужно до open(): иначе их записи при проигрывании пропускаются. */
+    synchronized <V> Table<V> table(int id, Function<V, String[]> encode, Function<String[], V> decode) {
+        Table<V> table = new Table<>((byte) id, encode, decode);
+        if (tables.putIfAbsent(table.id, table) != null) {
+            throw new IllegalArgumentException("таблица " + id + " уже зарегистрирована");
+        }
+        return table;
+    }
+
+    synchronized void open() throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        if (Files.exists(file) && Files.size(file) > 0) {
+            replay();
+            openAppender();
+        } else {
+            openAppender();
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            sync();
+        }
+    }
+
+    synchronized <V> void put(Table<V> table, String key, V value) {
+        table.rows.put(key, value);
+        append(OP_PUT, table.id, key, table.encode.apply(value));
+    }
+
+    synchronized <V> V remove(Table<V> table, String key) {
+        V prev = table.rows.remove(key);
+        if (prev != null) append(OP_DEL, table.id, key, null);
+        return prev;
+    }
+
+    /** Удалить строку, только если она всё ещё подходит (её могли заменить после выборки). */
+    synchronized <V> boolean removeIf(Table<V> table, String key, Predicate<V> test) {
+        V cur = table.rows.get(key);
+        if (cur == null || !test.test(cur)) return false;
+        return remove(table, key) != null;
+    }
+
+    /** Прочитать-изменить-записать без гонки с другими записями. */
+    synchronized <T> T atomically(Supplier<T> action) {
+        return action.get();
+    }
+
+    /** Переписать журнал, если записей в нём больше, чем ratio × живых строк. */
+    synchronized boolean compactIfNeeded(double ratio, long minRecords) {
+        if (out == null) return false;
+        long live = 0;
+        for (Table<?> t : tables.values()) live += t.size();
+        if (records < minRecords || records <= live * ratio) return false;
+        try {
+            compact();
+            return true;
+        } catch (IOException e) {
+            log.warning("embedded: уплотнение журнала не удалось: " + e.getMessage());
+            return false;
+        }
+    }
+
+    synchronized void close() {
+        if (out == null) return;
+        try {
+            sync();
+            out.close();
+        } catch (IOException e) {
+            log.warning("embedded: закрытие журнала: " + e.getMessage());
+        }
+        out = null;
+    }
+
+    private void replay() throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        if (bytes.length < 8 || in.readInt() != MAGIC) {
+            throw new IOException(file + " не является журналом BlockEraTwoFA");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException(file + ": неподдерживаемая версия журнала " + version);
+        }
+        long good = 8;
+        try {
+            while (in.available() > 0) {
+                byte op = in.readByte();
+                byte tableId = in.readByte();
+                String key = in.readUTF();
+                String[] fields = op == OP_PUT ? readFields(in) : null;
+                apply(tables.get(tableId), op, key, fields);
+                records++;
+                good = bytes.length - in.available();
+            }
+        } catch (EOFException e) {
+            // сервер упал посреди записи: хвост неполный, всё до него целое
+            log.warning("embedded: обрезан неполный хвост журнала (" + (bytes.length - good) + " байт)");
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                ch.truncate(good);
+            }
+        }
+    }
+
+    private static <V> void apply(Table<V> table, byte op, String key, String[] fields) throws IOException {
+        if (table == null) return;
+        switch (op) {
+            case OP_PUT -> table.rows.put(key, table.decode.apply(fields));
+            case OP_DEL -> table.rows.remove(key);
+            default -> throw new IOException("неизвестная операция журнала " + op);
+        }
+    }
+
+    private void append(byte op, byte tableId, String key, String[] fields) {
+        if (out == null) return;
+        try {
+            writeRecord(out, op, tableId, key, fields);
+            sync();
+            records++;
+        } catch (IOException e) {
+            // строка уже в памяти и попадёт на диск при следующем уплотнении
+            log.warning("embedded: запись в журнал не удалась: " + e.getMessage());
+        }
+    }
+
+    private void compact() throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        long written = 0;
+        try (FileOutputStream fos = new FileOutputStream(tmp.toFile());
+             DataOutputStream tmpOut = new DataOutputStream(new BufferedOutputStream(fos))) {
+            tmpOut.writeInt(MAGIC);
+            tmpOut.writeInt(VERSION);
+            for (Table<?> table : tables.values()) {
+                written += writeSnapshot(tmpOut, table);
+            }
+            tmpOut.flush();
+            fos.getFD().sync();
+        }
+        out.close();
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        openAppender();
+        records = written;
+    }
+
+    private static <V> long writeSnapshot(DataOutputStream to, Table<V> table) throws IOException {
+        long n = 0;
+        for (Map.Entry<String, V> e : table.rows.entrySet()) {
+            writeRecord(to, OP_PUT, table.id, e.getKey(), table.encode.apply(e.getValue()));
+            n++;
+        }
+        return n;
+    }
+
+    private void openAppender() throws IOException {
+        this.fileOut = new FileOutputStream(file.toFile(), true);
+        this.out = new DataOutputStream(new BufferedOutputStream(fileOut));
+    }
+
+    private void sync() throws IOException {
+        out.flush();
+        if (fsync) fileOut.getFD().sync();
+    }
+
+    private static void writeRecord(DataOutputStream to, byte op, byte tableId, String key, String[] fields) throws IOException {
+        to.writeByte(op);
+        to.writeByte(tableId);
+        to.writeUTF(key);
+        if (op != OP_PUT) return;
+        to.writeShort(fields.length);
+        for (String f : fields) {
+            to.writeBoolean(f != null);
+            if (f != null) to.writeUTF(f);
+        }
+    }
+
+    // ===== поля журнала =====
+
+    static String millis(Instant t) {
+        return t == null ? null : Long.toString(t.toEpochMilli());
+    }
+
+    static Instant instant(String f) {
+        return f == null ? null : Instant.ofEpochMilli(Long.parseLong(f));
+    }
+
+    private static String[] readFields(DataInputStream in) throws IOException {
+        String[] fields = new String[in.readUnsignedShort()];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = in.readBoolean() ? in.readUTF() : null;
+        }
+        return fields;
+    }
+}
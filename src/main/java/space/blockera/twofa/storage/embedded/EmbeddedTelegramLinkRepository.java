@@ -0,0 +1,97 @@
+package space.blockera.twofa.storage.embedded;
+
+import space.blockera.twofa.storage.StateCache;
+import space.blockera.twofa.storage.StorageExecutor;
+import space.blockera.twofa.storage.TelegramLinkRepository;
+
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static space.blockera.twofa.storage.embedded.EmbeddedStore.instant;
+import static space.blockera.twofa.storage.embedded.EmbeddedStore.millis;
+
+/** telegram_links в журнале вместе с last_verified_at. */
+public class EmbeddedTelegramLinkRepository implements TelegramLinkRepository {
+    static final int TABLE = 2;
+
+    record LinkRow(TgLink link, Instant lastVerifiedAt) { }
+
+    private final EmbeddedStore store;
+    private final StorageExecutor io;
+    private final EmbeddedStore.Table<LinkRow> rows;
+
+    EmbeddedTelegramLinkRepository(EmbeddedStore store, StorageExecutor io) {
+        this.store = store;
+        this.io = io;
+        this.rows = store.table(TABLE,
+                r -> new String[]{r.link().playerUuid().toString(), Long.toString(r.link().telegramId()),
+                        r.link().telegramUsername(), millis(r.link().linkedAt()), millis(r.lastVerifiedAt())},
+                f -> new LinkRow(new TgLink(UUID.fromString(f[0]), Long.parseLong(f[1]), f[2], instant(f[3])), instant(f[4])));
+    }
+
+    LinkRow row(UUID uuid) {
+        return rows.get(uuid.toString());
+    }
+
+    /** TelegramSessionRepository.markApproved: игрок только что подтвердил вход. */
+    void markVerified(UUID uuid, Instant at) {
+        store.atomically(() -> {
+            LinkRow row = row(uuid);
+            if (row != null) store.put(rows, uuid.toString(), new LinkRow(row.link(), at));
+            return null;
+        });
+    }
+
+    @Override
+    public Optional<TgLink> findByPlayer(UUID uuid) {
+        LinkRow row = row(uuid);
+        return row == null ? Optional.empty() : Optional.of(row.link());
+    }
+
+    @Override
+    public void upsert(UUID uuid, long telegramId, String username) {
+        store.atomically(() -> {
+            LinkRow prev = row(uuid);
+            store.put(rows, uuid.toString(), new LinkRow(new TgLink(uuid, telegramId, username, Instant.now()),
+                    prev != null ? prev.lastVerifiedAt() : null));
+            return null;
+        });
+    }
+
+    @Override
+    public void deleteByPlayer(UUID uuid) {
+        store.remove(rows, uuid.toString());
+    }
+
+    @Override
+    public void prime(UUID uuid, Optional<TgLink> link, long stamp) { }
+
+    @Override
+    public long cacheStamp(UUID uuid) {
+        return 0L;
+    }
+
+    @Override
+    public StateCache.Stats cacheStats() {
+        return new StateCache.Stats(0L, 0L, rows.size());
+    }
+
+    // ===== async =====
+
+    @Override
+    public CompletableFuture<Optional<TgLink>> findByPlayerAsync(UUID uuid) {
+        return io.supply(() -> findByPlayer(uuid));
+    }
+
+    @Override
+    public CompletableFuture<Void> upsertAsync(UUID uuid, long telegramId, String username) {
+        return io.run(() -> upsert(uuid, telegramId, username));
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteByPlayerAsync(UUID uuid) {
+        return io.run(() -> deleteByPlayer(uuid));
+    }
+}
@@ -0,0 +1,161 @@
+package space.blockera.twofa.storage.embedded;
+
+import space.blockera.twofa.storage.StorageExecutor;
+import space.blockera.twofa.storage.TelegramSessionRepository;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static space.blockera.twofa.storage.embedded.EmbeddedStore.instant;
+import static space.blockera.twofa.storage.embedded.EmbeddedStore.millis;
+
+/**
+ * tg_sessions в журнале. Все решения принимаются по последней сессии игрока,
+ * поэтому хранится только она: новая заменяет предыдущую.
+ */
+public class EmbeddedTelegramSessionRepository implements TelegramSessionRepository {
+    static final int TABLE = 4;
+
+    record SessionRow(long id, String status, Instant expiresAt, String ip) { }
+
+    private final EmbeddedStore store;
+    private final StorageExecutor io;
+    private final EmbeddedTelegramLinkRepository links;
+    private final EmbeddedStore.Table<SessionRow> rows;
+    private final AtomicLong nextId = new AtomicLong(1);
+
+    EmbeddedTelegramSessionRepository(EmbeddedStore store, StorageExecutor io, EmbeddedTelegramLinkRepository links) {
+        this.store = store;
+        this.io = io;
+        this.links = links;
+        this.rows = store.table(TABLE,
+                r -> new String[]{Long.toString(r.id()), r.status(), millis(r.expiresAt()), r.ip()},
+                f -> new SessionRow(Long.parseLong(f[0]), f[1], instant(f[2]), f[3]));
+    }
+
+    /** После проигрывания журнала: id продолжают последовательность. */
+    void afterOpen() {
+        long max = 0;
+        for (SessionRow r : rows.values()) max = Math.max(max, r.id());
+        nextId.set(max + 1);
+    }
+
+    @Override
+    public long createPending(UUID uuid, Instant expiresAt, String ip) {
+        return store.atomically(() -> {
+            SessionRow live = rows.get(uuid.toString());
+            if (live != null && "PENDING".equals(live.status()) && live.expiresAt().isAfter(Instant.now())
+                    && Objects.equals(live.ip(), ip)) {
+                if (expiresAt.isAfter(live.expiresAt())) {
+                    store.put(rows, uuid.toString(), new SessionRow(live.id(), live.status(), expiresAt, ip));
+                }
+                return live.id();
+            }
+            long id = nextId.getAndIncrement();
+            store.put(rows, uuid.toString(), new SessionRow(id, "PENDING", expiresAt, ip));
+            return id;
+        });
+    }
+
+    @Override
+    public Optional<String> getStatus(UUID uuid) {
+        SessionRow row = rows.get(uuid.toString());
+        return row == null ? Optional.empty() : Optional.ofNullable(row.status());
+    }
+
+    @Override
+    public Optional<Boolean> isApproved(UUID uuid) {
+        return getStatus(uuid).flatMap(status -> switch (status) {
+            case "APPROVED" -> Optional.of(Boolean.TRUE);
+            case "DENIED" -> Optional.of(Boolean.FALSE);
+            default -> Optional.empty(); // PENDING
+        });
+    }
+
+    @Override
+    public Map<UUID, Boolean> findDecisions(Collection<UUID> uuids) {
+        Map<UUID, Boolean> out = new HashMap<>();
+        for (UUID uuid : uuids) {
+            SessionRow row = rows.get(uuid.toString());
+            if (row != null && !"PENDING".equals(row.status())) out.put(uuid, "APPROVED".equals(row.status()));
+        }
+        return out;
+    }
+
+    @Override
+    public void markApproved(UUID uuid) {
+        if (resolve(uuid, "APPROVED")) {
+            links.markVerified(uuid, Instant.now());
+        }
+    }
+
+    @Override
+    public void markDenied(UUID uuid) {
+        resolve(uuid, "DENIED");
+    }
+
+    @Override
+    public boolean isCooldownOk(UUID uuid, long minutes) {
+        if (minutes <= 0) return false;
+        EmbeddedTelegramLinkRepository.LinkRow link = links.row(uuid);
+        return link != null && link.lastVerifiedAt() != null
+                && link.lastVerifiedAt().plusSeconds(minutes * 60).isAfter(Instant.now());
+    }
+
+    /** @return сколько сессий удалено: окно подтверждения закончилось раньше, чем now - retention. */
+    long purgeExpired(Instant before) {
+        long n = 0;
+        for (String key : rows.view().keySet()) {
+            if (store.removeIf(rows, key, r -> r.expiresAt().isBefore(before))) n++;
+        }
+        return n;
+    }
+
+    private boolean resolve(UUID uuid, String status) {
+        return store.atomically(() -> {
+            SessionRow row = rows.get(uuid.toString());
+            if (row == null || !"PENDING".equals(row.status())) return false;
+            store.put(rows, uuid.toString(), new SessionRow(row.id(), status, row.expiresAt(), row.ip()));
+            return true;
+        });
+    }
+
+    // ===== async =====
+
+    @Override
+    public CompletableFuture<Long> createPendingAsync(UUID uuid, Instant expiresAt, String ip) {
+        return io.supply(() -> createPending(uuid, expiresAt, ip));
+    }
+
+    @Override
+    public CompletableFuture<Optional<String>> getStatusAsync(UUID uuid) {
+        return io.supply(() -> getStatus(uuid));
+    }
+
+    @Override
+    public CompletableFuture<Optional<Boolean>> isApprovedAsync(UUID uuid) {
+        return io.supply(() -> isApproved(uuid));
+    }
+
+    @Override
+    public CompletableFuture<Void> markApprovedAsync(UUID uuid) {
+        return io.run(() -> markApproved(uuid));
+    }
+
+    @Override
+    public CompletableFuture<Void> markDeniedAsync(UUID uuid) {
+        return io.run(() -> markDenied(uuid));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> isCooldownOkAsync(UUID uuid, long minutes) {
+        return io.supply(() -> isCooldownOk(uuid, minutes));
+    }
+}
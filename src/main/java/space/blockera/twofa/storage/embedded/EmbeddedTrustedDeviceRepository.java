@@ -0,0 +1,136 @@
+package space.blockera.twofa.storage.embedded;
+
+import space.blockera.twofa.storage.StorageExecutor;
+import space.blockera.twofa.storage.TrustedDeviceRepository;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static space.blockera.twofa.storage.embedded.EmbeddedStore.instant;
+import static space.blockera.twofa.storage.embedded.EmbeddedStore.millis;
+
+/**
+ * twofa_trusted_devices в журнале: одна строка на игрока со списком его устройств,
+ * их всегда читают целиком. last_used не ведётся — его смотрят только в MySQL.
+ */
+public class EmbeddedTrustedDeviceRepository implements TrustedDeviceRepository {
+    static final int TABLE = 5;
+    private static final int FIELDS = 5;
+
+    private final EmbeddedStore store;
+    private final StorageExecutor io;
+    private final EmbeddedStore.Table<List<TrustedDevice>> rows;
+    private final AtomicLong nextId = new AtomicLong(1);
+
+    EmbeddedTrustedDeviceRepository(EmbeddedStore store, StorageExecutor io) {
+        this.store = store;
+        this.io = io;
+        this.rows = store.table(TABLE, EmbeddedTrustedDeviceRepository::encode, EmbeddedTrustedDeviceRepository::decode);
+    }
+
+    /** После проигрывания журнала: id продолжают последовательность. */
+    void afterOpen() {
+        long max = 0;
+        for (List<TrustedDevice> devices : rows.values()) {
+            for (TrustedDevice d : devices) max = Math.max(max, d.id());
+        }
+        nextId.set(max + 1);
+    }
+
+    @Override
+    public List<TrustedDevice> findAll(UUID uuid) {
+        List<TrustedDevice> devices = rows.get(uuid.toString());
+        return devices == null ? List.of() : devices;
+    }
+
+    @Override
+    public long upsert(UUID uuid, String ip, String locale, String platform, Instant trustedUntil) {
+        return store.atomically(() -> {
+            List<TrustedDevice> next = new ArrayList<>(findAll(uuid));
+            long id = -1;
+            for (int i = 0; i < next.size(); i++) {
+                TrustedDevice d = next.get(i);
+                if (d.ip().equals(ip) && d.locale().equals(locale) && d.platform().equals(platform)) {
+                    id = d.id();
+                    next.set(i, new TrustedDevice(id, ip, locale, platform, trustedUntil));
+                }
+            }
+            if (id < 0) {
+                id = nextId.getAndIncrement();
+                next.add(new TrustedDevice(id, ip, locale, platform, trustedUntil));
+            }
+            store.put(rows, uuid.toString(), List.copyOf(next));
+            return id;
+        });
+    }
+
+    @Override
+    public boolean touchAll(Collection<Long> ids) {
+        return true;
+    }
+
+    @Override
+    public void deleteAll(UUID uuid) {
+        store.remove(rows, uuid.toString());
+    }
+
+    /** @return сколько устройств с истёкшим доверием удалено. */
+    long purgeExpired(Instant now) {
+        long n = 0;
+        for (String key : rows.view().keySet()) {
+            n += store.atomically(() -> {
+                List<TrustedDevice> devices = rows.get(key);
+                if (devices == null) return 0L;
+                List<TrustedDevice> alive = devices.stream().filter(d -> !d.trustedUntil().isBefore(now)).toList();
+                if (alive.size() == devices.size()) return 0L;
+                if (alive.isEmpty()) store.remove(rows, key);
+                else store.put(rows, key, alive);
+                return (long) (devices.size() - alive.size());
+            });
+        }
+        return n;
+    }
+
+    private static String[] encode(List<TrustedDevice> devices) {
+        String[] f = new String[devices.size() * FIELDS];
+        int i = 0;
+        for (TrustedDevice d : devices) {
+            f[i++] = Long.toString(d.id());
+            f[i++] = d.ip();
+            f[i++] = d.locale();
+            f[i++] = d.platform();
+            f[i++] = millis(d.trustedUntil());
+        }
+        return f;
+    }
+
+    private static List<TrustedDevice> decode(String[] f) {
+        List<TrustedDevice> devices = new ArrayList<>(f.length / FIELDS);
+        for (int i = 0; i + FIELDS <= f.length; i += FIELDS) {
+            devices.add(new TrustedDevice(Long.parseLong(f[i]), f[i + 1], f[i + 2], f[i + 3], instant(f[i + 4])));
+        }
+        return List.copyOf(devices);
+    }
+
+    // ===== async =====
+
+    @Override
+    public CompletableFuture<List<TrustedDevice>> findAllAsync(UUID uuid) {
+        return io.supply(() -> findAll(uuid));
+    }
+
+    @Override
+    public CompletableFuture<Long> upsertAsync(UUID uuid, String ip, String locale, String platform, Instant trustedUntil) {
+        return io.supply(() -> upsert(uuid, ip, locale, platform, trustedUntil));
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteAllAsync(UUID uuid) {
+        return io.run(() -> deleteAll(uuid));
+    }
+}
@@ -0,0 +1,147 @@
+package space.blockera.twofa.storage.embedded;
+
+import space.blockera.twofa.storage.StateCache;
+import space.blockera.twofa.storage.StorageExecutor;
+import space.blockera.twofa.storage.UserRepository;
+
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/** twofa_users в журнале; кэш не нужен — индекс и так в памяти. */
+public class EmbeddedUserRepository implements UserRepository {
+    static final int TABLE = 1;
+
+    record UserRow(boolean enabled, byte[] secret, int drift) { }
+
+    private final EmbeddedStore store;
+    private final StorageExecutor io;
+    private final EmbeddedStore.Table<UserRow> rows;
+
+    EmbeddedUserRepository(EmbeddedStore store, StorageExecutor io) {
+        this.store = store;
+        this.io = io;
+        this.rows = store.table(TABLE,
+                r -> new String[]{r.enabled() ? "1" : "0", r.secret() == null ? null : Base64.getEncoder().encodeToString(r.secret()),
+                        Integer.toString(r.drift())},
+                // в журналах до сдвига часов полей два
+                f -> new UserRow("1".equals(f[0]), f[1] == null ? null : Base64.getDecoder().decode(f[1]),
+                        f.length > 2 && f[2] != null ? Integer.parseInt(f[2]) : 0));
+    }
+
+    UserRow row(UUID uuid) {
+        return rows.get(uuid.toString());
+    }
+
+    @Override
+    public boolean isEnabled(UUID uuid) {
+        UserRow row = row(uuid);
+        return row != null && row.enabled();
+    }
+
+    @Override
+    public Optional<byte[]> getSecret(UUID uuid) {
+        UserRow row = row(uuid);
+        return row == null ? Optional.empty() : Optional.ofNullable(row.secret());
+    }
+
+    @Override
+    public int getDrift(UUID uuid) {
+        UserRow row = row(uuid);
+        return row == null ? 0 : row.drift();
+    }
+
+    @Override
+    public void upsertSecret(UUID uuid, byte[] secretBytes, boolean enabled) {
+        store.put(rows, uuid.toString(), new UserRow(enabled, secretBytes, 0));
+    }
+
+    @Override
+    public void setEnabled(UUID uuid, boolean enabled) {
+        store.atomically(() -> {
+            UserRow row = row(uuid);
+            if (row != null) store.put(rows, uuid.toString(), new UserRow(enabled, row.secret(), row.drift()));
+            return null;
+        });
+    }
+
+    @Override
+    public void setDrift(UUID uuid, int drift) {
+        store.atomically(() -> {
+            UserRow row = row(uuid);
+            if (row != null && row.drift() != drift) store.put(rows, uuid.toString(), new UserRow(row.enabled(), row.secret(), drift));
+            return null;
+        });
+    }
+
+    @Override
+    public void prime(UUID uuid, boolean enabled, byte[] secret, int drift, long stamp) { }
+
+    /** Ключ журнала — UUID строкой: её порядок совпадает с порядком BINARY(16) в MySQL. */
+    @Override
+    public List<StoredSecret> secretsAfter(UUID after, int limit) {
+        String from = after == null ? null : after.toString();
+        return rows.view().entrySet().stream()
+                .filter(e -> e.getValue().secret() != null && (from == null || e.getKey().compareTo(from) > 0))
+                .sorted(Map.Entry.comparingByKey())
+                .limit(limit)
+                .map(e -> new StoredSecret(UUID.fromString(e.getKey()), e.getValue().secret()))
+                .toList();
+    }
+
+    @Override
+    public int rewriteSecrets(List<SecretRewrite> batch) {
+        return store.atomically(() -> {
+            int rewritten = 0;
+            for (SecretRewrite r : batch) {
+                UserRow row = row(r.uuid());
+                if (row == null || !Arrays.equals(row.secret(), r.expected())) continue;
+                store.put(rows, r.uuid().toString(), new UserRow(row.enabled(), r.replacement(), row.drift()));
+                rewritten++;
+            }
+            return rewritten;
+        });
+    }
+
+    @Override
+    public long cacheStamp(UUID uuid) {
+        return 0L;
+    }
+
+    @Override
+    public StateCache.Stats cacheStats() {
+        return new StateCache.Stats(0L, 0L, rows.size());
+    }
+
+    // ===== async =====
+    // ответ готов сразу, но продолжения (AES/HMAC при проверке кода) не должны попадать в основной поток
+
+    @Override
+    public CompletableFuture<Boolean> isEnabledAsync(UUID uuid) {
+        return io.supply(() -> isEnabled(uuid));
+    }
+
+    @Override
+    public CompletableFuture<Optional<byte[]>> getSecretAsync(UUID uuid) {
+        return io.supply(() -> getSecret(uuid));
+    }
+
+    @Override
+    public CompletableFuture<Void> upsertSecretAsync(UUID uuid, byte[] secretBytes, boolean enabled) {
+        return io.run(() -> upsertSecret(uuid, secretBytes, enabled));
+    }
+
+    @Override
+    public CompletableFuture<Void> setEnabledAsync(UUID uuid, boolean enabled) {
+        return io.run(() -> setEnabled(uuid, enabled));
+    }
+
+    @Override
+    public CompletableFuture<Void> setDriftAsync(UUID uuid, int drift) {
+        return io.run(() -> setDrift(uuid, drift));
+    }
+}
@@ -0,0 +1,199 @@
+package space.blockera.twofa.storage.mysql;
+
+import org.bukkit.configuration.file.FileConfiguration;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Предохранитель перед MySQL. Обращение репозитория — от getConnection() до close() соединения;
+ * ошибка соединения/таймаут или обращение дольше latency_budget_ms считаются сбоем.
+ * После failure_threshold сбоев подряд цепь размыкается: getConnection() сразу бросает
+ * {@link OpenException}, и репозитории отвечают из локального состояния, не дожидаясь
+ * connectionTimeout пула. Пока цепь разомкнута, фоновая проверка раз в probe_interval_seconds
+ * берёт соединение из пула в обход предохранителя и при успехе замыкает цепь.
+ */
+public class CircuitBreaker {
+
+    /** storage.breaker. */
+    public record Settings(boolean enabled, int failureThreshold, long latencyBudgetMillis,
+                           int queryTimeoutSeconds, long probeIntervalMillis) {
+        public static Settings fromConfig(FileConfiguration cfg) {
+            return new Settings(
+                    cfg.getBoolean("storage.breaker.enabled", true),
+                    Math.max(1, cfg.getInt("storage.breaker.failure_threshold", 5)),
+                    Math.max(1L, cfg.getLong("storage.breaker.latency_budget_ms", 1000L)),
+                    Math.max(0, cfg.getInt("storage.breaker.query_timeout_seconds", 5)),
+                    Math.max(1L, cfg.getLong("storage.breaker.probe_interval_seconds", 5L)) * 1000L);
+        }
+    }
+
+    /** Цепь разомкнута: запрос в БД не отправлялся. */
+    public static class OpenException extends SQLTransientConnectionException {
+        OpenException() {
+            super("MySQL недоступна (предохранитель разомкнут)");
+        }
+    }
+
+    private final Settings settings;
+    private final Logger log;
+    private final AtomicInteger failures = new AtomicInteger();
+    private final ScheduledExecutorService prober;
+    private volatile boolean open;
+
+    public CircuitBreaker(Settings settings, Logger log) {
+        this.settings = settings;
+        this.log = log;
+        this.prober = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "BlockEraTwoFA-Breaker");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Обёртка над пулом для репозиториев. Миграции и уборщик работают с пулом напрямую:
+     * их долгие запросы не должны ни размыкать цепь, ни упираться в query_timeout_seconds.
+     */
+    public DataSource guard(DataSource ds) {
+        if (!settings.enabled()) return ds;
+        InvocationHandler handler = (proxy, method, args) -> {
+            if (method.getName().equals("getConnection")) {
+                if (open) throw new OpenException();
+                long started = System.nanoTime();
+                Connection c;
+                try {
+                    c = (Connection) invoke(ds, method, args);
+                } catch (SQLException e) {
+                    failed();
+                    throw e;
+                }
+                return Proxy.newProxyInstance(CircuitBreaker.class.getClassLoader(),
+                        new Class<?>[]{Connection.class}, new Call(c, started));
+            }
+            return invoke(ds, method, args);
+        };
+        return (DataSource) Proxy.newProxyInstance(CircuitBreaker.class.getClassLoader(),
+                new Class<?>[]{DataSource.class}, handler);
+    }
+
+    /** Соединение одного обращения: таймаут на запросы и итог при close(). */
+    private final class Call implements InvocationHandler {
+        private final Connection target;
+        private final long started;
+        private boolean failed;
+        private boolean closed;
+
+        Call(Connection target, long started) {
+            this.target = target;
+            this.started = started;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("close")) {
+                if (!closed) {
+                    closed = true;
+                    long elapsedMillis = (System.nanoTime() - started) / 1_000_000L;
+                    if (failed || elapsedMillis > settings.latencyBudgetMillis()) failed();
+                    else succeeded();
+                }
+                return CircuitBreaker.invoke(target, method, args);
+            }
+            Object result = track(target, method, args);
+            if (result instanceof Statement st) {
+                if (settings.queryTimeoutSeconds() > 0) st.setQueryTimeout(settings.queryTimeoutSeconds());
+                return Proxy.newProxyInstance(CircuitBreaker.class.getClassLoader(), new Class<?>[]{method.getReturnType()},
+                        (p, m, a) -> track(st, m, a));
+            }
+            return result;
+        }
+
+        private Object track(Object target, Method method, Object[] args) throws Throwable {
+            try {
+                return CircuitBreaker.invoke(target, method, args);
+            } catch (SQLException e) {
+                if (isConnectionFailure(e)) failed = true;
+                throw e;
+            }
+        }
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /** Сбой доступности, а не ошибка самого запроса (дубликат ключа и т. п. цепь не размыкают). */
+    private static boolean isConnectionFailure(SQLException e) {
+        if (e instanceof SQLTransientConnectionException || e instanceof SQLNonTransientConnectionException
+                || e instanceof SQLTimeoutException || e instanceof SQLRecoverableException) {
+            return true;
+        }
+        String state = e.getSQLState();
+        return state != null && state.startsWith("08");
+    }
+
+    private void succeeded() {
+        failures.set(0);
+    }
+
+    private void failed() {
+        if (failures.incrementAndGet() < settings.failureThreshold() || open) return;
+        synchronized (this) {
+            if (open) return;
+            open = true;
+        }
+        log.warning("MySQL: " + settings.failureThreshold() + " сбоев или медленных обращений подряд, предохранитель разомкнут. "
+                + "Решения при входе — из локального состояния и storage.breaker.degraded_policy.");
+    }
+
+    /** Фоновая проверка; вызывается один раз после открытия пула. */
+    public void startProbing(DataSource pool) {
+        if (!settings.enabled()) return;
+        long every = settings.probeIntervalMillis();
+        prober.scheduleWithFixedDelay(() -> probe(pool), every, every, TimeUnit.MILLISECONDS);
+    }
+
+    private void probe(DataSource pool) {
+        if (!open) return;
+        long started = System.nanoTime();
+        int timeoutSeconds = (int) Math.max(1L, (settings.latencyBudgetMillis() + 999L) / 1000L);
+        try (Connection c = pool.getConnection()) {
+            if (!c.isValid(timeoutSeconds)) return;
+        } catch (SQLException e) {
+            return;
+        }
+        if ((System.nanoTime() - started) / 1_000_000L > settings.latencyBudgetMillis()) return;
+        failures.set(0);
+        open = false;
+        log.info("MySQL снова отвечает, предохранитель замкнут.");
+    }
+
+    public void close() {
+        prober.shutdownNow();
+    }
+}
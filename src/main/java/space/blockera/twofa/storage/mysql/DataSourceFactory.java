@@ -0,0 +1,83 @@
+package space.blockera.twofa.storage.mysql;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class DataSourceFactory {
+    private static final String JDBC_PARAMS = "useUnicode=true&characterEncoding=UTF-8&useSSL=false&serverTimezone=UTC";
+
+    public static HikariDataSource fromConfig(FileConfiguration cfg) {
+        HikariConfig hc = new HikariConfig();
+        String host = cfg.getString("storage.host", "127.0.0.1");
+        int port = cfg.getInt("storage.port", 3306);
+        String db = cfg.getString("storage.database", "security");
+        String user = cfg.getString("storage.user", "twofa");
+        String pass = cfg.getString("storage.password", "");
+
+        String jdbc = String.format("jdbc:mysql://%s:%d/%s?%s", host, port, db, JDBC_PARAMS);
+        hc.setJdbcUrl(jdbc);
+        hc.setUsername(user);
+        hc.setPassword(pass);
+        int maxPool = cfg.getInt("storage.pool.maximumPoolSize", 10);
+        hc.setMaximumPoolSize(maxPool);
+        hc.setMinimumIdle(Math.min(maxPool, Math.max(1, cfg.getInt("storage.pool.minimumIdle", maxPool))));
+        hc.setConnectionTimeout(connectionTimeout(cfg));
+        hc.setPoolName("BlockEraTwoFA-Hikari");
+        return new HikariDataSource(hc);
+    }
+
+    /**
+     * Отдельный пул только для чтения (storage.replicas). Несколько хостов — балансировка
+     * драйвером (jdbc:mysql:loadbalance). База и учётка по умолчанию те же, что у основной.
+     * @return null, если реплики не включены
+     */
+    public static HikariDataSource replicasFromConfig(FileConfiguration cfg) {
+        List<String> hosts = cfg.getStringList("storage.replicas.hosts");
+        if (!cfg.getBoolean("storage.replicas.enabled", false) || hosts.isEmpty()) return null;
+
+        HikariConfig hc = new HikariConfig();
+        String db = cfg.getString("storage.replicas.database", cfg.getString("storage.database", "security"));
+        String scheme = hosts.size() > 1 ? "jdbc:mysql:loadbalance://" : "jdbc:mysql://";
+        hc.setJdbcUrl(scheme + String.join(",", hosts) + "/" + db + "?" + JDBC_PARAMS);
+        hc.setUsername(cfg.getString("storage.replicas.user", cfg.getString("storage.user", "twofa")));
+        hc.setPassword(cfg.getString("storage.replicas.password", cfg.getString("storage.password", "")));
+        hc.setReadOnly(true);
+        int maxPool = cfg.getInt("storage.replicas.maximumPoolSize", 10);
+        hc.setMaximumPoolSize(maxPool);
+        hc.setMinimumIdle(Math.min(maxPool, Math.max(1, cfg.getInt("storage.replicas.minimumIdle", maxPool))));
+        hc.setConnectionTimeout(connectionTimeout(cfg));
+        hc.setPoolName("BlockEraTwoFA-Hikari-Replica");
+        return new HikariDataSource(hc);
+    }
+
+    /** Сколько ждать свободного соединения: по умолчанию у Hikari 30 с, и столько же ждал бы вход. */
+    private static long connectionTimeout(FileConfiguration cfg) {
+        return Math.max(250L, cfg.getLong("storage.pool.connection_timeout_ms", 3000L));
+    }
+
+    /**
+     * Открыть minimumIdle соединений сразу, а не ждать, пока их лениво добавит housekeeper:
+     * первые входы после старта не платят за TCP/TLS/авторизацию.
+     */
+    public static void prewarm(HikariDataSource ds) {
+        int count = Math.max(1, ds.getMinimumIdle());
+        List<Connection> opened = new ArrayList<>(count);
+        try {
+            for (int i = 0; i < count; i++) {
+                opened.add(ds.getConnection());
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("prewarm: " + e.getMessage(), e);
+        } finally {
+            for (Connection c : opened) {
+                try { c.close(); } catch (SQLException ignored) { }
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package space.blockera.twofa.storage.mysql;
+
+import org.bukkit.configuration.file.FileConfiguration;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.ToLongFunction;
+import java.util.logging.Logger;
+
+/**
+ * Фоновая очистка устаревших строк. Удаляет небольшими порциями в порядке первичного
+ * ключа (DELETE ... ORDER BY pk LIMIT n) с паузой между порциями, чтобы InnoDB не держал
+ * блокировки долго, а старые строки с малыми id находились без полного скана.
+ */
+public class ExpiryJanitor {
+
+    /** storage.janitor: размер порции, пауза, предел порций за проход и сроки хранения. */
+    public record Settings(int chunkSize, long pauseMillis, int maxChunksPerRun,
+                           long sessionRetentionHours, long actionRetentionHours) {
+        public static Settings fromConfig(FileConfiguration cfg) {
+            return new Settings(
+                    Math.max(1, cfg.getInt("storage.janitor.chunk_size", 500)),
+                    Math.max(0L, cfg.getLong("storage.janitor.chunk_pause_ms", 200L)),
+                    Math.max(1, cfg.getInt("storage.janitor.max_chunks_per_run", 50)),
+                    Math.max(0L, cfg.getLong("storage.janitor.tg_sessions_retention_hours", 24L)),
+                    Math.max(0L, cfg.getLong("storage.janitor.tg_actions_retention_hours", 24L)));
+        }
+    }
+
+    /** retentionHours == null — в запросе нет параметра срока хранения. */
+    private record Target(String table, String sql, ToLongFunction<Settings> retentionHours) { }
+
+    private static final List<Target> TARGETS = List.of(
+            new Target("tg_challenges",
+                    "DELETE FROM tg_challenges WHERE expires_at < NOW() ORDER BY token LIMIT ?", null),
+            // окно подтверждения закончилось давно — строка уже не последняя и не нужна для решения
+            new Target("tg_sessions",
+                    "DELETE FROM tg_sessions WHERE expires_at < NOW() - INTERVAL ? HOUR ORDER BY id LIMIT ?", Settings::sessionRetentionHours),
+            new Target("tg_session_current",
+                    "DELETE FROM tg_session_current WHERE expires_at < NOW() - INTERVAL ? HOUR ORDER BY player_uuid_bin LIMIT ?", Settings::sessionRetentionHours),
+            new Target("twofa_trusted_devices",
+                    "DELETE FROM twofa_trusted_devices WHERE trusted_until < NOW() ORDER BY id LIMIT ?", null),
+            new Target("tg_actions",
+                    "DELETE FROM tg_actions WHERE processed_at < NOW() - INTERVAL ? HOUR ORDER BY id LIMIT ?", Settings::actionRetentionHours));
+
+    private final Map<String, AtomicLong> purged = new LinkedHashMap<>();
+    private final Logger log;
+    private final DataSource ds;
+    private final Settings settings;
+
+    public ExpiryJanitor(DataSource ds, Settings settings, Logger log) {
+        this.ds = ds;
+        this.settings = settings;
+        this.log = log;
+        for (Target target : TARGETS) {
+            purged.put(target.table(), new AtomicLong());
+        }
+    }
+
+    /**
+     * Один проход по всем таблицам; вызывается асинхронным таймером.
+     * @param keepRunning false — прервать между порциями (плагин выключается)
+     */
+    public void run(BooleanSupplier keepRunning) {
+        Settings s = settings;
+        for (Target target : TARGETS) {
+            for (int chunk = 0; chunk < s.maxChunksPerRun(); chunk++) {
+                if (!keepRunning.getAsBoolean()) return;
+                int deleted;
+                try {
+                    deleted = deleteChunk(target, s);
+                } catch (SQLException e) {
+                    log.warning("janitor " + target.table() + ": " + e.getMessage());
+                    break;
+                }
+                purged.get(target.table()).addAndGet(deleted);
+                if (deleted < s.chunkSize()) break;
+                if (!pause(s.pauseMillis())) return;
+            }
+        }
+    }
+
+    /** Сколько строк удалено с момента запуска, по таблицам. */
+    public Map<String, Long> purgedCounts() {
+        Map<String, Long> out = new LinkedHashMap<>();
+        purged.forEach((table, count) -> out.put(table, count.get()));
+        return out;
+    }
+
+    private int deleteChunk(Target target, Settings s) throws SQLException {
+        try (Connection c = ds.getConnection(); PreparedStatement ps = c.prepareStatement(target.sql())) {
+            int i = 1;
+            if (target.retentionHours() != null) ps.setLong(i++, target.retentionHours().applyAsLong(s));
+            ps.setInt(i, s.chunkSize());
+            return ps.executeUpdate();
+        }
+    }
+
+    private static boolean pause(long millis) {
+        if (millis <= 0) return true;
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package space.blockera.twofa.storage.mysql;
+
+import space.blockera.twofa.storage.mysql.SchemaMigrator.Migration;
+
+import java.util.List;
+
+import static space.blockera.twofa.storage.mysql.SchemaMigrator.addColumn;
+import static space.blockera.twofa.storage.mysql.SchemaMigrator.addIndex;
+import static space.blockera.twofa.storage.mysql.SchemaMigrator.dropIndex;
+import static space.blockera.twofa.storage.mysql.SchemaMigrator.sql;
+
+/**
+ * Все изменения схемы по порядку. Уже выпущенную миграцию не редактируют —
+ * у неё есть контрольная сумма в twofa_schema_version; меняют схему новой версией в конце списка.
+ */
+final class Migrations {
+    private Migrations() { }
+
+    private static final String BINARY_UUID =
+            "BINARY(16) AS (UNHEX(REPLACE(player_uuid, '-', ''))) VIRTUAL AFTER player_uuid";
+
+    /** Более старая сессия не перетирает новую; session_id присваивается последним — MySQL применяет SET слева направо. */
+    static final String CURRENT_UPSERT = """
+            ON DUPLICATE KEY UPDATE
+              expires_at = IF(VALUES(session_id) >= session_id, VALUES(expires_at), expires_at),
+              session_id = GREATEST(session_id, VALUES(session_id))""";
+
+    static final List<Migration> ALL = List.of(
+            new Migration(1, "base tables",
+                    sql("""
+                        CREATE TABLE IF NOT EXISTS twofa_users (
+                          uuid BINARY(16) PRIMARY KEY,
+                          enabled TINYINT(1) NOT NULL DEFAULT 0,
+                          secret VARBINARY(512) NULL,
+                          created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+                        )"""),
+                    sql("""
+                        CREATE TABLE IF NOT EXISTS telegram_links (
+                          player_uuid CHAR(36) PRIMARY KEY,
+                          telegram_id BIGINT NOT NULL,
+                          telegram_username VARCHAR(64),
+                          linked_at TIMESTAMP NOT NULL
+                        ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4"""),
+                    sql("""
+                        CREATE TABLE IF NOT EXISTS tg_challenges (
+                          token VARCHAR(16) PRIMARY KEY,
+                          player_uuid CHAR(36) NOT NULL,
+                          player_name VARCHAR(16) NULL,
+                          expires_at TIMESTAMP NOT NULL
+                        ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4"""),
+                    sql("""
+                        CREATE TABLE IF NOT EXISTS tg_sessions (
+                          id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                          player_uuid CHAR(36) NOT NULL,
+                          created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+                          expires_at TIMESTAMP NOT NULL,
+                          status ENUM('PENDING','APPROVED','DENIED') NOT NULL DEFAULT 'PENDING',
+                          approved_at TIMESTAMP NULL,
+                          ip VARCHAR(45) NULL,
+                          INDEX idx_uuid_status (player_uuid, status)
+                        ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4"""),
+                    sql("""
+                        CREATE TABLE IF NOT EXISTS twofa_trusted_devices (
+                          id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                          uuid BINARY(16) NOT NULL,
+                          ip VARCHAR(45) NOT NULL,
+                          locale VARCHAR(32) NOT NULL,
+                          platform VARCHAR(16) NOT NULL,
+                          trusted_until TIMESTAMP NOT NULL,
+                          created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+                          last_used TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+                          UNIQUE KEY uniq_device (uuid, ip, locale, platform)
+                        )"""),
+                    sql("""
+                        CREATE TABLE IF NOT EXISTS tg_online (
+                          uuid CHAR(36) PRIMARY KEY,
+                          name VARCHAR(32) NOT NULL,
+                          online TINYINT(1) NOT NULL DEFAULT 0,
+                          last_seen TIMESTAMP NULL,
+                          last_world VARCHAR(64) NULL,
+                          last_server VARCHAR(64) NULL,
+                          updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+                            ON UPDATE CURRENT_TIMESTAMP,
+                          INDEX (online), INDEX (last_seen)
+                        )"""),
+                    sql("""
+                        CREATE TABLE IF NOT EXISTS tg_actions (
+                          id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                          action ENUM('LOGOUT') NOT NULL,
+                          player_uuid CHAR(36) NOT NULL,
+                          reason VARCHAR(200) NULL,
+                          created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+                          processed_at TIMESTAMP NULL,
+                          INDEX (processed_at), INDEX (player_uuid)
+                        )""")),
+            // колонки, которых не было в таблицах старых версий плагина
+            new Migration(2, "legacy columns",
+                    addColumn("tg_challenges", "player_name", "VARCHAR(16) NULL AFTER player_uuid"),
+                    addColumn("telegram_links", "last_verified_at", "TIMESTAMP NULL")),
+            // бот пишет player_uuid строкой, поэтому CHAR(36) остаётся, а плагин ищет и читает
+            // по вычисляемой BINARY(16): VIRTUAL добавляется мгновенно, индексы строятся онлайн
+            new Migration(3, "binary uuid columns",
+                    addColumn("tg_sessions", "player_uuid_bin", BINARY_UUID),
+                    addIndex("tg_sessions", "idx_uuid_bin_status", "player_uuid_bin, status"),
+                    dropIndex("tg_sessions", "idx_uuid_status"),
+                    addColumn("tg_actions", "player_uuid_bin", BINARY_UUID),
+                    addIndex("tg_actions", "idx_uuid_bin", "player_uuid_bin"),
+                    dropIndex("tg_actions", "player_uuid"),
+                    addColumn("tg_challenges", "player_uuid_bin", BINARY_UUID)),
+            // tg_sessions остаётся историей, а текущая сессия игрока находится по первичному ключу.
+            // Проекция хранит только ссылку на сессию и ведётся плагином при её создании; статус
+            // меняет и бот, поэтому он читается из самой tg_sessions (тоже по первичному ключу).
+            // Триггеров нет: CREATE TRIGGER при включённом binlog требует SUPER, которого у хостинга нет
+            new Migration(4, "current telegram session",
+                    sql("""
+                        CREATE TABLE IF NOT EXISTS tg_session_current (
+                          player_uuid_bin BINARY(16) PRIMARY KEY,
+                          session_id BIGINT NOT NULL,
+                          expires_at TIMESTAMP NOT NULL
+                        ) ENGINE=InnoDB"""),
+                    sql("""
+                        INSERT INTO tg_session_current (player_uuid_bin, session_id, expires_at)
+                        SELECT * FROM (
+                          SELECT s.player_uuid_bin AS uuid_bin, s.id AS sid, s.expires_at AS until FROM tg_sessions s
+                          JOIN (SELECT player_uuid_bin, MAX(id) AS id FROM tg_sessions GROUP BY player_uuid_bin) m ON m.id = s.id
+                        ) latest
+                        """ + CURRENT_UPSERT)),
+            // сдвиг шага, на котором игрок последний раз ввёл верный код: проверка начинается с него
+            new Migration(5, "totp drift",
+                    addColumn("twofa_users", "totp_drift", "TINYINT NOT NULL DEFAULT 0"))
+    );
+}
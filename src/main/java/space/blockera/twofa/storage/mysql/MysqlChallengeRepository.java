@@ -0,0 +1,95 @@
+package space.blockera.twofa.storage.mysql;
+
+import space.blockera.twofa.storage.ChallengeRepository;
+import space.blockera.twofa.storage.StorageExecutor;
+import space.blockera.twofa.storage.UuidCodec;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Logger;
+
+public class MysqlChallengeRepository implements ChallengeRepository {
+
+    private final DataSource ds;
+    private final StorageExecutor io;
+    private final Logger log;
+
+    public MysqlChallengeRepository(DataSource ds, StorageExecutor io, Logger log) {
+        this.ds = ds;
+        this.io = io;
+        this.log = log;
+    }
+
+    /** Новая версия: с именем игрока. */
+    @Override
+    public void create(UUID uuid, String playerName, String token, Instant expiresAt) {
+        String sql = "INSERT INTO tg_challenges (token, player_uuid, player_name, expires_at) VALUES (?, ?, ?, ?)";
+        try (Connection c = ds.getConnection();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setString(1, token);
+            ps.setString(2, uuid.toString());
+            ps.setString(3, playerName);
+            ps.setTimestamp(4, Timestamp.from(expiresAt));
+            ps.executeUpdate();
+        } catch (Exception e) {
+            log.warning("create challenge failed: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public Optional<Challenge> findValidByToken(String token) {
+        String sql = "SELECT player_uuid_bin, player_name, expires_at " +
+                     "FROM tg_challenges WHERE token = ? AND expires_at > NOW()";
+        try (Connection c = ds.getConnection();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setString(1, token);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    UUID u = UuidCodec.fromBytes(rs.getBytes("player_uuid_bin"));
+                    String name = rs.getString("player_name"); // может быть null для старых записей
+                    Instant exp = rs.getTimestamp("expires_at").toInstant();
+                    return Optional.of(new Challenge(u, name, token, exp));
+                }
+            }
+        } catch (Exception e) {
+            log.warning("findValidByToken failed: " + e.getMessage());
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public void delete(String token) {
+        String sql = "DELETE FROM tg_challenges WHERE token = ?";
+        try (Connection c = ds.getConnection();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setString(1, token);
+            ps.executeUpdate();
+        } catch (Exception e) {
+            log.warning("delete challenge failed: " + e.getMessage());
+        }
+    }
+
+    // ===== async =====
+
+    @Override
+    public CompletableFuture<Void> createAsync(UUID uuid, String playerName, String token, Instant expiresAt) {
+        return io.run(() -> create(uuid, playerName, token, expiresAt));
+    }
+
+    @Override
+    public CompletableFuture<Optional<Challenge>> findValidByTokenAsync(String token) {
+        return io.supply(() -> findValidByToken(token));
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteAsync(String token) {
+        return io.run(() -> delete(token));
+    }
+}
@@ -0,0 +1,83 @@
+package space.blockera.twofa.storage.mysql;
+
+import space.blockera.twofa.storage.LoginStateRepository;
+import space.blockera.twofa.storage.TelegramLinkRepository;
+import space.blockera.twofa.storage.TrustedDeviceRepository;
+import space.blockera.twofa.storage.UuidCodec;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/**
+ * Всё, что нужно для решения при входе, одним запросом: флаг twofa_users,
+ * строка telegram_links с last_verified_at и все доверенные устройства игрока.
+ */
+public class MysqlLoginStateRepository implements LoginStateRepository {
+
+    private static final String SQL = """
+            SELECT u.enabled, u.secret, u.totp_drift, l.telegram_id, l.telegram_username, l.linked_at, l.last_verified_at,
+                   d.id AS device_id, d.ip AS device_ip, d.locale, d.platform, d.trusted_until
+            FROM (SELECT 1) k
+            LEFT JOIN twofa_users u ON u.uuid = ?
+            LEFT JOIN telegram_links l ON l.player_uuid = ?
+            LEFT JOIN twofa_trusted_devices d ON d.uuid = ?
+            """;
+
+    private final ReadRouter reads;
+    private final Logger log;
+
+    public MysqlLoginStateRepository(ReadRouter db, Logger log) {
+        this.reads = db;
+        this.log = log;
+    }
+
+    @Override
+    public LoginSnapshot load(UUID uuid, String ip) {
+        byte[] key = UuidCodec.toBytes(uuid);
+        try (Connection c = reads.read(uuid).getConnection(); PreparedStatement ps = c.prepareStatement(SQL)) {
+            ps.setBytes(1, key);
+            ps.setString(2, uuid.toString());
+            ps.setBytes(3, key);
+            boolean enabled = false;
+            byte[] secret = null;
+            int drift = 0;
+            TelegramLinkRepository.TgLink link = null;
+            Instant verifiedAt = null;
+            List<TrustedDeviceRepository.TrustedDevice> devices = new ArrayList<>(1);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    enabled = rs.getBoolean("enabled");
+                    secret = rs.getBytes("secret");
+                    drift = rs.getInt("totp_drift");
+                    long telegramId = rs.getLong("telegram_id");
+                    if (!rs.wasNull()) {
+                        Timestamp linkedAt = rs.getTimestamp("linked_at");
+                        link = new TelegramLinkRepository.TgLink(uuid, telegramId, rs.getString("telegram_username"),
+                                linkedAt != null ? linkedAt.toInstant() : Instant.EPOCH);
+                    }
+                    Timestamp verified = rs.getTimestamp("last_verified_at");
+                    verifiedAt = verified != null ? verified.toInstant() : null;
+                    long deviceId = rs.getLong("device_id");
+                    if (!rs.wasNull()) {
+                        Timestamp until = rs.getTimestamp("trusted_until");
+                        devices.add(new TrustedDeviceRepository.TrustedDevice(deviceId, rs.getString("device_ip"),
+                                rs.getString("locale"), rs.getString("platform"),
+                                until != null ? until.toInstant() : Instant.EPOCH));
+                    }
+                }
+            }
+            return new LoginSnapshot(uuid, ip, enabled, secret, drift, link, verifiedAt, List.copyOf(devices), System.currentTimeMillis());
+        } catch (SQLException e) {
+            log.warning("load login snapshot: " + e.getMessage());
+            return null;
+        }
+    }
+}
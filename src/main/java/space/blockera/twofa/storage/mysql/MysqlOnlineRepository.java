@@ -0,0 +1,102 @@
+// src/main/java/space/blockera/twofa/storage/mysql/MysqlOnlineRepository.java
+package space.blockera.twofa.storage.mysql;
+
+import space.blockera.twofa.storage.OnlineRepository;
+import space.blockera.twofa.storage.UuidCodec;
+
+import javax.sql.DataSource;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Predicate;
+
+public class MysqlOnlineRepository implements OnlineRepository {
+    private final DataSource ds;
+    public MysqlOnlineRepository(DataSource ds) { this.ds = ds; }
+
+    /** Один многострочный upsert на пачку игроков вместо запроса на каждого. */
+    @Override
+    public void upsertBatch(List<PresenceRow> rows, String server) throws SQLException {
+        if (rows.isEmpty()) return;
+        StringBuilder sql = new StringBuilder(160 + rows.size() * 16)
+                .append("INSERT INTO tg_online (uuid,name,online,last_seen,last_world,last_server) VALUES ");
+        for (int i = 0; i < rows.size(); i++) {
+            sql.append(i == 0 ? "(?,?,?,?,?,?)" : ",(?,?,?,?,?,?)");
+        }
+        sql.append(" ON DUPLICATE KEY UPDATE name=VALUES(name), online=VALUES(online), last_seen=VALUES(last_seen), ")
+           .append("last_world=VALUES(last_world), last_server=VALUES(last_server)");
+        try (Connection c = ds.getConnection();
+             PreparedStatement ps = c.prepareStatement(sql.toString())) {
+            int i = 1;
+            for (PresenceRow row : rows) {
+                ps.setString(i++, row.uuid().toString());
+                ps.setString(i++, row.name());
+                ps.setInt(i++, row.online() ? 1 : 0);
+                ps.setTimestamp(i++, new Timestamp(row.lastSeenMillis()));
+                ps.setString(i++, row.world());
+                ps.setString(i++, server);
+            }
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Забирает пачку LOGOUT-строк этого сервера (tg_online.last_server) и «ничьих» —
+     * игрок офлайн, строки нет или сервер давно не обновлял last_seen — старше orphanGraceSeconds.
+     * SKIP LOCKED не даёт двум серверам взять одну строку; подтверждение — один UPDATE ... IN (...)
+     * в той же транзакции. Строки, для которых ack вернул false, остаются необработанными.
+     */
+    @Override
+    public LogoutClaim claimLogouts(String server, long afterId, int limit, long orphanGraceSeconds,
+                                    Predicate<LogoutAction> ack) throws SQLException {
+        try (Connection c = ds.getConnection()) {
+            c.setAutoCommit(false);
+            try {
+                List<LogoutAction> acked = new ArrayList<>();
+                List<LogoutAction> deferred = new ArrayList<>();
+                try (PreparedStatement ps = c.prepareStatement(
+                        "SELECT a.id, a.player_uuid_bin, a.reason, a.created_at < NOW() - INTERVAL ? SECOND AS settled FROM tg_actions a " +
+                        "LEFT JOIN tg_online o ON o.uuid = a.player_uuid " +
+                        "WHERE a.action='LOGOUT' AND a.processed_at IS NULL AND a.id > ? " +
+                        "AND (o.last_server = ? OR ((o.uuid IS NULL OR o.online = 0 OR o.last_server IS NULL " +
+                        "OR o.last_seen < NOW() - INTERVAL ? SECOND) AND a.created_at < NOW() - INTERVAL ? SECOND)) " +
+                        "ORDER BY a.id ASC LIMIT ? FOR UPDATE OF a SKIP LOCKED")) {
+                    ps.setLong(1, orphanGraceSeconds);
+                    ps.setLong(2, afterId);
+                    ps.setString(3, server);
+                    ps.setLong(4, orphanGraceSeconds);
+                    ps.setLong(5, orphanGraceSeconds);
+                    ps.setInt(6, limit);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            LogoutAction action = new LogoutAction(rs.getLong("id"),
+                                    UuidCodec.fromBytes(rs.getBytes("player_uuid_bin")), rs.getString("reason"),
+                                    rs.getBoolean("settled"));
+                            (ack.test(action) ? acked : deferred).add(action);
+                        }
+                    }
+                }
+                if (!acked.isEmpty()) {
+                    StringBuilder sql = new StringBuilder("UPDATE tg_actions SET processed_at=NOW() WHERE id IN (");
+                    for (int i = 0; i < acked.size(); i++) {
+                        sql.append(i == 0 ? "?" : ",?");
+                    }
+                    try (PreparedStatement ps = c.prepareStatement(sql.append(')').toString())) {
+                        for (int i = 0; i < acked.size(); i++) {
+                            ps.setLong(i + 1, acked.get(i).id());
+                        }
+                        ps.executeUpdate();
+                    }
+                }
+                c.commit();
+                return new LogoutClaim(acked, deferred);
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
+            } finally {
+                c.setAutoCommit(true);
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package space.blockera.twofa.storage.mysql;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.plugin.Plugin;
+import space.blockera.twofa.storage.ChallengeRepository;
+import space.blockera.twofa.storage.LoginStateRepository;
+import space.blockera.twofa.storage.OnlineRepository;
+import space.blockera.twofa.storage.StateCache;
+import space.blockera.twofa.storage.StorageExecutor;
+import space.blockera.twofa.storage.StorageProvider;
+import space.blockera.twofa.storage.StorageUnavailableException;
+import space.blockera.twofa.storage.TelegramLinkRepository;
+import space.blockera.twofa.storage.TelegramSessionRepository;
+import space.blockera.twofa.storage.TrustedDeviceRepository;
+import space.blockera.twofa.storage.UserRepository;
+
+import javax.sql.DataSource;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Logger;
+
+/**
+ * MySQL через HikariCP: общая БД всех серверов сети и Telegram-бота.
+ * С storage.replicas чтения идут в отдельный пул реплик (см. ReadRouter).
+ * Репозитории ходят в пулы через предохранители (storage.breaker, см. CircuitBreaker).
+ */
+public class MysqlStorageProvider implements StorageProvider {
+    private final HikariDataSource ds;
+    private final HikariDataSource replicas;
+    private final CircuitBreaker breaker;
+    private final CircuitBreaker replicaBreaker;
+    private final StorageExecutor io;
+    private final UserRepository users;
+    private final TelegramLinkRepository links;
+    private final ChallengeRepository challenges;
+    private final TelegramSessionRepository sessions;
+    private final TrustedDeviceRepository devices;
+    private final OnlineRepository online;
+    private final LoginStateRepository loginStates;
+    private final ExpiryJanitor janitor;
+
+    private MysqlStorageProvider(Plugin plugin, FileConfiguration cfg, HikariDataSource ds, HikariDataSource replicas) {
+        Logger log = plugin.getLogger();
+        this.ds = ds;
+        this.replicas = replicas;
+        CircuitBreaker.Settings breakerSettings = CircuitBreaker.Settings.fromConfig(cfg);
+        this.breaker = new CircuitBreaker(breakerSettings, log);
+        this.replicaBreaker = replicas != null ? new CircuitBreaker(breakerSettings, log) : null;
+        DataSource primary = breaker.guard(ds);
+        // запросы могут одновременно занимать соединения обоих пулов
+        this.io = new StorageExecutor(plugin, ds.getMaximumPoolSize() + (replicas != null ? replicas.getMaximumPoolSize() : 0));
+        long window = Math.max(0L, cfg.getLong("storage.replicas.read_your_writes_seconds", 5L)) * 1000L;
+        ReadRouter db = new ReadRouter(primary, replicas != null ? replicaBreaker.guard(replicas) : null, replicaBreaker, window);
+        StateCache.Settings cacheSettings = StateCache.Settings.fromConfig(cfg);
+        this.users = new MysqlUserRepository(db, ds, io, cacheSettings, log);
+        this.links = new MysqlTelegramLinkRepository(db, io, cacheSettings, log);
+        this.challenges = new MysqlChallengeRepository(primary, io, log);
+        this.sessions = new MysqlTelegramSessionRepository(db, io, log);
+        this.devices = new MysqlTrustedDeviceRepository(db, io, log);
+        this.online = new MysqlOnlineRepository(primary);
+        this.loginStates = new MysqlLoginStateRepository(db, log);
+        this.janitor = new ExpiryJanitor(ds, ExpiryJanitor.Settings.fromConfig(cfg), log);
+        breaker.startProbing(ds);
+        if (replicaBreaker != null) replicaBreaker.startProbing(replicas);
+    }
+
+    /** Пулы Hikari, миграции схемы, прогрев соединений. Любой поток, кроме основного. */
+    public static MysqlStorageProvider open(Plugin plugin, FileConfiguration cfg) {
+        HikariDataSource ds = DataSourceFactory.fromConfig(cfg);
+        HikariDataSource replicas = null;
+        try {
+            // на недоведённой или чужой схеме вход не открываем: bootstrapStorage повторит попытку
+            if (!new SchemaMigrator(ds, plugin.getLogger()).migrate()) {
+                throw new StorageUnavailableException("Миграция схемы", null);
+            }
+            DataSourceFactory.prewarm(ds);
+            replicas = DataSourceFactory.replicasFromConfig(cfg);
+            if (replicas != null) DataSourceFactory.prewarm(replicas);
+            return new MysqlStorageProvider(plugin, cfg, ds, replicas);
+        } catch (RuntimeException ex) {
+            if (replicas != null) replicas.close();
+            ds.close();
+            throw ex;
+        }
+    }
+
+    @Override public UserRepository users() { return users; }
+    @Override public TelegramLinkRepository telegramLinks() { return links; }
+    @Override public ChallengeRepository challenges() { return challenges; }
+    @Override public TelegramSessionRepository telegramSessions() { return sessions; }
+    @Override public TrustedDeviceRepository trustedDevices() { return devices; }
+    @Override public OnlineRepository online() { return online; }
+    @Override public LoginStateRepository loginStates() { return loginStates; }
+    @Override public StorageExecutor executor() { return io; }
+
+    @Override
+    public void maintenance(BooleanSupplier keepRunning) {
+        janitor.run(keepRunning);
+    }
+
+    @Override
+    public Map<String, Long> purgedCounts() {
+        return janitor.purgedCounts();
+    }
+
+    @Override
+    public void close() {
+        // сначала дожидаемся запросов пула, потом закрываем соединения
+        io.shutdown();
+        breaker.close();
+        if (replicaBreaker != null) replicaBreaker.close();
+        if (replicas != null) replicas.close();
+        ds.close();
+    }
+}
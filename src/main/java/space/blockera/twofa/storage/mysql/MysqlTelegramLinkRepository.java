@@ -0,0 +1,140 @@
+package space.blockera.twofa.storage.mysql;
+
+import space.blockera.twofa.storage.StateCache;
+import space.blockera.twofa.storage.StorageExecutor;
+import space.blockera.twofa.storage.StorageUnavailableException;
+import space.blockera.twofa.storage.TelegramLinkRepository;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Logger;
+
+public class MysqlTelegramLinkRepository implements TelegramLinkRepository {
+
+    private final DataSource ds;
+    private final ReadRouter reads;
+    private final StorageExecutor io;
+    private final Logger log;
+    private final StateCache.Settings cacheSettings;
+    private final StateCache<UUID, Optional<TgLink>> cache;
+
+    public MysqlTelegramLinkRepository(ReadRouter db, StorageExecutor io, StateCache.Settings cacheSettings, Logger log) {
+        this.ds = db.primary();
+        this.reads = db;
+        this.io = io;
+        this.log = log;
+        this.cacheSettings = cacheSettings;
+        this.cache = new StateCache<>(cacheSettings.maxEntries());
+    }
+
+    @Override
+    public Optional<TgLink> findByPlayer(UUID uuid) {
+        Optional<TgLink> cached = cache.get(uuid);
+        if (cached != null) return cached;
+        long stamp = cache.stamp(uuid);
+        String sql = "SELECT telegram_id, telegram_username, linked_at FROM telegram_links WHERE player_uuid = ?";
+        try (Connection c = reads.read(uuid).getConnection();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setString(1, uuid.toString());
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    long tid = rs.getLong("telegram_id");
+                    String uname = rs.getString("telegram_username");
+                    Instant at = rs.getTimestamp("linked_at").toInstant();
+                    Optional<TgLink> link = Optional.of(new TgLink(uuid, tid, uname, at));
+                    cache.putIfFresh(uuid, link, stamp, cacheSettings.ttlMillis());
+                    return link;
+                }
+            }
+            // привязку создаёт бот, поэтому «не привязан» держим недолго
+            cache.putIfFresh(uuid, Optional.empty(), stamp, cacheSettings.negativeTtlMillis());
+        } catch (Exception e) {
+            if (!(e instanceof CircuitBreaker.OpenException)) log.warning("findByPlayer failed: " + e.getMessage());
+            // БД недоступна: последняя известная привязка, а без неё решает вызывающий
+            Optional<TgLink> stale = cache.getStale(uuid);
+            if (stale == null) throw new StorageUnavailableException("telegram_links", e);
+            return stale;
+        }
+        return Optional.empty();
+    }
+
+    /** Заполнить кэш строкой, прочитанной в pre-login (stamp снят до запроса). */
+    @Override
+    public void prime(UUID uuid, Optional<TgLink> link, long stamp) {
+        cache.putIfFresh(uuid, link, stamp,
+                link.isPresent() ? cacheSettings.ttlMillis() : cacheSettings.negativeTtlMillis());
+    }
+
+    @Override
+    public long cacheStamp(UUID uuid) {
+        return cache.stamp(uuid);
+    }
+
+    @Override
+    public StateCache.Stats cacheStats() {
+        return cache.stats();
+    }
+
+    @Override
+    public void upsert(UUID uuid, long telegramId, String username) {
+        String sql = """
+            INSERT INTO telegram_links (player_uuid, telegram_id, telegram_username, linked_at)
+            VALUES (?, ?, ?, ?)
+            ON DUPLICATE KEY UPDATE telegram_id = VALUES(telegram_id),
+                                    telegram_username = VALUES(telegram_username),
+                                    linked_at = VALUES(linked_at)
+        """;
+        try (Connection c = ds.getConnection();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setString(1, uuid.toString());
+            ps.setLong(2, telegramId);
+            ps.setString(3, username);
+            ps.setTimestamp(4, Timestamp.from(Instant.now()));
+            ps.executeUpdate();
+        } catch (Exception e) {
+            log.warning("upsert telegram link failed: " + e.getMessage());
+        } finally {
+            reads.wrote(uuid);
+            cache.invalidate(uuid);
+        }
+    }
+
+    @Override
+    public void deleteByPlayer(UUID uuid) {
+        String sql = "DELETE FROM telegram_links WHERE player_uuid = ?";
+        try (Connection c = ds.getConnection();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setString(1, uuid.toString());
+            ps.executeUpdate();
+        } catch (Exception e) {
+            log.warning("deleteByPlayer failed: " + e.getMessage());
+        } finally {
+            reads.wrote(uuid);
+            cache.invalidate(uuid);
+        }
+    }
+
+    // ===== async =====
+
+    @Override
+    public CompletableFuture<Optional<TgLink>> findByPlayerAsync(UUID uuid) {
+        return io.supply(() -> findByPlayer(uuid));
+    }
+
+    @Override
+    public CompletableFuture<Void> upsertAsync(UUID uuid, long telegramId, String username) {
+        return io.run(() -> upsert(uuid, telegramId, username));
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteByPlayerAsync(UUID uuid) {
+        return io.run(() -> deleteByPlayer(uuid));
+    }
+}
@@ -0,0 +1,267 @@
+package space.blockera.twofa.storage.mysql;
+
+import space.blockera.twofa.storage.StorageExecutor;
+import space.blockera.twofa.storage.TelegramSessionRepository;
+import space.blockera.twofa.storage.UuidCodec;
+
+import javax.sql.DataSource;
+import java.sql.*;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Logger;
+
+public class MysqlTelegramSessionRepository implements TelegramSessionRepository {
+    private static final int DECISION_BATCH = 500;
+
+    private final DataSource ds;
+    private final ReadRouter reads;
+    private final StorageExecutor io;
+    private final Logger log;
+
+    /** Статус текущей сессии: ссылка из tg_session_current, сам статус — из tg_sessions (его меняет бот). */
+    private static final String CURRENT_STATUS =
+            "SELECT s.status FROM tg_session_current cur JOIN tg_sessions s ON s.id = cur.session_id";
+
+    public MysqlTelegramSessionRepository(ReadRouter db, StorageExecutor io, Logger log) {
+        this.ds = db.primary();
+        this.reads = db;
+        this.io = io;
+        this.log = log;
+    }
+
+    /**
+     * Перезаход с того же IP, пока запрос ещё ждёт ответа, не плодит новую сессию:
+     * живая PENDING-сессия продлевается до expiresAt и переиспользуется.
+     * tg_session_current меняется в той же транзакции, что и tg_sessions.
+     */
+    @Override
+    public long createPending(UUID uuid, Instant expiresAt, String ip) {
+        reads.wrote(uuid);
+        try (Connection c = ds.getConnection()) {
+            c.setAutoCommit(false);
+            try {
+                long id = findLivePending(c, uuid, ip);
+                if (id > 0 && !extend(c, id, expiresAt)) id = -1L;
+                if (id <= 0) id = insert(c, uuid, expiresAt, ip);
+                if (id > 0) {
+                    try (PreparedStatement ps = c.prepareStatement(
+                            "INSERT INTO tg_session_current (player_uuid_bin, session_id, expires_at) VALUES (?, ?, ?) "
+                            + Migrations.CURRENT_UPSERT)) {
+                        ps.setBytes(1, UuidCodec.toBytes(uuid));
+                        ps.setLong(2, id);
+                        ps.setTimestamp(3, Timestamp.from(expiresAt));
+                        ps.executeUpdate();
+                    }
+                }
+                c.commit();
+                return id;
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
+            } finally {
+                c.setAutoCommit(true);
+            }
+        } catch (Exception e) {
+            log.warning("createPending failed: " + e.getMessage());
+        }
+        return -1L;
+    }
+
+    private static long findLivePending(Connection c, UUID uuid, String ip) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(
+                "SELECT s.id FROM tg_session_current cur JOIN tg_sessions s ON s.id = cur.session_id " +
+                "WHERE cur.player_uuid_bin=? AND s.status='PENDING' AND s.expires_at > NOW() AND s.ip <=> ?")) {
+            ps.setBytes(1, UuidCodec.toBytes(uuid));
+            ps.setString(2, ip);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : -1L;
+            }
+        }
+    }
+
+    private static boolean extend(Connection c, long id, Instant expiresAt) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(
+                "UPDATE tg_sessions SET expires_at=GREATEST(expires_at, ?) WHERE id=? AND status='PENDING'")) {
+            ps.setTimestamp(1, Timestamp.from(expiresAt));
+            ps.setLong(2, id);
+            return ps.executeUpdate() > 0;
+        }
+    }
+
+    private static long insert(Connection c, UUID uuid, Instant expiresAt, String ip) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(
+                "INSERT INTO tg_sessions (player_uuid, expires_at, ip) VALUES (?, ?, ?)", Statement.RETURN_GENERATED_KEYS)) {
+            ps.setString(1, uuid.toString());
+            ps.setTimestamp(2, Timestamp.from(expiresAt));
+            ps.setString(3, ip);
+            ps.executeUpdate();
+            try (ResultSet rs = ps.getGeneratedKeys()) {
+                return rs.next() ? rs.getLong(1) : -1L;
+            }
+        }
+    }
+
+    @Override
+    public Optional<String> getStatus(UUID uuid) {
+        String sql = CURRENT_STATUS + " WHERE cur.player_uuid_bin=?";
+        try (Connection c = reads.read(uuid).getConnection(); PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setBytes(1, UuidCodec.toBytes(uuid));
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) return Optional.ofNullable(rs.getString(1));
+            }
+        } catch (Exception e) {
+            log.warning("getStatus failed: " + e.getMessage());
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public Optional<Boolean> isApproved(UUID uuid) {
+        String sql = CURRENT_STATUS + " WHERE cur.player_uuid_bin=?";
+        try (Connection c = reads.read(uuid).getConnection(); PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setBytes(1, UuidCodec.toBytes(uuid));
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    String s = rs.getString(1);
+                    if ("APPROVED".equals(s)) return Optional.of(Boolean.TRUE);
+                    if ("DENIED".equals(s))   return Optional.of(Boolean.FALSE);
+                    return Optional.empty(); // PENDING
+                }
+            }
+        } catch (Exception e) {
+            log.warning("isApproved failed: " + e.getMessage());
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Решения по текущим сессиям сразу для многих игроков: один запрос с IN (...)
+     * по первичным ключам tg_session_current и tg_sessions на пачку вместо запроса на каждого. Игроки, чья сессия ещё PENDING, в ответ не попадают.
+     */
+    @Override
+    public Map<UUID, Boolean> findDecisions(Collection<UUID> uuids) {
+        Map<UUID, Boolean> out = new HashMap<>();
+        List<UUID> all = new ArrayList<>(uuids);
+        for (int from = 0; from < all.size(); from += DECISION_BATCH) {
+            List<UUID> chunk = all.subList(from, Math.min(all.size(), from + DECISION_BATCH));
+            String sql = "SELECT cur.player_uuid_bin, s.status FROM tg_session_current cur " +
+                    "JOIN tg_sessions s ON s.id = cur.session_id WHERE cur.player_uuid_bin IN (" +
+                    placeholders(chunk.size()) + ") AND s.status <> 'PENDING'";
+            try (Connection c = reads.read(chunk).getConnection(); PreparedStatement ps = c.prepareStatement(sql)) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    ps.setBytes(i + 1, UuidCodec.toBytes(chunk.get(i)));
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        out.put(UuidCodec.fromBytes(rs.getBytes(1)), "APPROVED".equals(rs.getString(2)));
+                    }
+                }
+            } catch (Exception e) {
+                log.warning("findDecisions failed: " + e.getMessage());
+            }
+        }
+        return out;
+    }
+
+    private static String placeholders(int count) {
+        StringBuilder sb = new StringBuilder(count * 2);
+        for (int i = 0; i < count; i++) {
+            sb.append(i == 0 ? "?" : ",?");
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public void markApproved(UUID uuid) {
+        try {
+            resolveCurrent(uuid, "s.status='APPROVED', s.approved_at=NOW()");
+        } catch (Exception e) {
+            log.warning("markApproved failed: " + e.getMessage());
+        }
+        try (Connection c = ds.getConnection(); PreparedStatement ps = c.prepareStatement(
+                "UPDATE telegram_links SET last_verified_at=NOW() WHERE player_uuid=?")) {
+            ps.setString(1, uuid.toString());
+            ps.executeUpdate();
+        } catch (Exception e) {
+            log.warning("update last_verified_at failed: " + e.getMessage());
+        }
+        reads.wrote(uuid);
+    }
+
+    @Override
+    public void markDenied(UUID uuid) {
+        try {
+            resolveCurrent(uuid, "s.status='DENIED'");
+        } catch (Exception e) {
+            log.warning("markDenied failed: " + e.getMessage());
+        }
+        reads.wrote(uuid);
+    }
+
+    /** Закрыть текущую PENDING-сессию; проекция хранит только ссылку и не меняется. */
+    private void resolveCurrent(UUID uuid, String set) throws SQLException {
+        try (Connection c = ds.getConnection(); PreparedStatement ps = c.prepareStatement(
+                "UPDATE tg_sessions s JOIN tg_session_current cur ON s.id = cur.session_id SET " + set +
+                " WHERE cur.player_uuid_bin=? AND s.status='PENDING'")) {
+            ps.setBytes(1, UuidCodec.toBytes(uuid));
+            ps.executeUpdate();
+        }
+    }
+
+    @Override
+    public boolean isCooldownOk(UUID uuid, long minutes) {
+        if (minutes <= 0) return false;
+        String sql = "SELECT last_verified_at FROM telegram_links WHERE player_uuid=?";
+        try (Connection c = reads.read(uuid).getConnection(); PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setString(1, uuid.toString());
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next() && rs.getTimestamp(1) != null) {
+                    Instant ts = rs.getTimestamp(1).toInstant();
+                    return ts.plusSeconds(minutes * 60).isAfter(Instant.now());
+                }
+            }
+        } catch (Exception e) {
+            log.warning("isCooldownOk failed: " + e.getMessage());
+        }
+        return false;
+    }
+
+    // ===== async =====
+
+    @Override
+    public CompletableFuture<Long> createPendingAsync(UUID uuid, Instant expiresAt, String ip) {
+        return io.supply(() -> createPending(uuid, expiresAt, ip));
+    }
+
+    @Override
+    public CompletableFuture<Optional<String>> getStatusAsync(UUID uuid) {
+        return io.supply(() -> getStatus(uuid));
+    }
+
+    @Override
+    public CompletableFuture<Optional<Boolean>> isApprovedAsync(UUID uuid) {
+        return io.supply(() -> isApproved(uuid));
+    }
+
+    @Override
+    public CompletableFuture<Void> markApprovedAsync(UUID uuid) {
+        return io.run(() -> markApproved(uuid));
+    }
+
+    @Override
+    public CompletableFuture<Void> markDeniedAsync(UUID uuid) {
+        return io.run(() -> markDenied(uuid));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> isCooldownOkAsync(UUID uuid, long minutes) {
+        return io.supply(() -> isCooldownOk(uuid, minutes));
+    }
+}
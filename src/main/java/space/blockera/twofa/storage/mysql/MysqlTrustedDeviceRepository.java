@@ -0,0 +1,140 @@
+package space.blockera.twofa.storage.mysql;
+
+import space.blockera.twofa.storage.StorageExecutor;
+import space.blockera.twofa.storage.TrustedDeviceRepository;
+import space.blockera.twofa.storage.UuidCodec;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Logger;
+
+public class MysqlTrustedDeviceRepository implements TrustedDeviceRepository {
+    private static final int TOUCH_BATCH = 500;
+
+    private final DataSource dataSource;
+    private final ReadRouter reads;
+    private final StorageExecutor io;
+    private final Logger log;
+
+    public MysqlTrustedDeviceRepository(ReadRouter db, StorageExecutor io, Logger log) {
+        this.dataSource = db.primary();
+        this.reads = db;
+        this.io = io;
+        this.log = log;
+    }
+
+    /** Все устройства игрока — для индекса на время сессии (если предзагрузка не сработала). */
+    @Override
+    public List<TrustedDevice> findAll(UUID uuid) {
+        String sql = "SELECT id, ip, locale, platform, trusted_until FROM twofa_trusted_devices WHERE uuid=?";
+        try (Connection connection = reads.read(uuid).getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setBytes(1, UuidCodec.toBytes(uuid));
+            try (ResultSet rs = ps.executeQuery()) {
+                List<TrustedDevice> devices = new ArrayList<>();
+                while (rs.next()) {
+                    Timestamp ts = rs.getTimestamp("trusted_until");
+                    devices.add(new TrustedDevice(rs.getLong("id"), rs.getString("ip"), rs.getString("locale"),
+                            rs.getString("platform"), ts != null ? ts.toInstant() : Instant.EPOCH));
+                }
+                return devices;
+            }
+        } catch (SQLException ex) {
+            log.warning("find trusted devices: " + ex.getMessage());
+            return List.of();
+        }
+    }
+
+    /** @return id строки (новой или существующей) или -1 при ошибке. */
+    @Override
+    public long upsert(UUID uuid, String ip, String locale, String platform, Instant trustedUntil) {
+        // LAST_INSERT_ID(id) отдаёт id и при обновлении существующей строки
+        String sql = """
+                INSERT INTO twofa_trusted_devices(uuid, ip, locale, platform, trusted_until)
+                VALUES(?,?,?,?,?)
+                ON DUPLICATE KEY UPDATE id=LAST_INSERT_ID(id), trusted_until=VALUES(trusted_until)
+                """;
+        reads.wrote(uuid);
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            ps.setBytes(1, UuidCodec.toBytes(uuid));
+            ps.setString(2, ip);
+            ps.setString(3, locale);
+            ps.setString(4, platform);
+            ps.setTimestamp(5, Timestamp.from(trustedUntil));
+            ps.executeUpdate();
+            try (ResultSet keys = ps.getGeneratedKeys()) {
+                return keys.next() ? keys.getLong(1) : -1L;
+            }
+        } catch (SQLException ex) {
+            log.warning("upsert trusted device: " + ex.getMessage());
+            return -1L;
+        }
+    }
+
+    /** Отложенные отметки last_used одним UPDATE ... WHERE id IN (...) на пачку. */
+    @Override
+    public boolean touchAll(Collection<Long> ids) {
+        List<Long> all = new ArrayList<>(ids);
+        try (Connection connection = dataSource.getConnection()) {
+            for (int from = 0; from < all.size(); from += TOUCH_BATCH) {
+                List<Long> chunk = all.subList(from, Math.min(all.size(), from + TOUCH_BATCH));
+                StringBuilder sql = new StringBuilder("UPDATE twofa_trusted_devices SET last_used=CURRENT_TIMESTAMP WHERE id IN (");
+                for (int i = 0; i < chunk.size(); i++) {
+                    sql.append(i == 0 ? "?" : ",?");
+                }
+                try (PreparedStatement ps = connection.prepareStatement(sql.append(')').toString())) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        ps.setLong(i + 1, chunk.get(i));
+                    }
+                    ps.executeUpdate();
+                }
+            }
+            return true;
+        } catch (SQLException ex) {
+            log.warning("touch trusted devices (" + all.size() + "): " + ex.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public void deleteAll(UUID uuid) {
+        String sql = "DELETE FROM twofa_trusted_devices WHERE uuid=?";
+        reads.wrote(uuid);
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setBytes(1, UuidCodec.toBytes(uuid));
+            ps.executeUpdate();
+        } catch (SQLException ex) {
+            log.warning("delete trusted devices: " + ex.getMessage());
+        }
+    }
+
+    // ===== async =====
+
+    @Override
+    public CompletableFuture<List<TrustedDevice>> findAllAsync(UUID uuid) {
+        return io.supply(() -> findAll(uuid));
+    }
+
+    @Override
+    public CompletableFuture<Long> upsertAsync(UUID uuid, String ip, String locale, String platform, Instant trustedUntil) {
+        return io.supply(() -> upsert(uuid, ip, locale, platform, trustedUntil));
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteAllAsync(UUID uuid) {
+        return io.run(() -> deleteAll(uuid));
+    }
+}
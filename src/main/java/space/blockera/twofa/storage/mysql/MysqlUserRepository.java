@@ -0,0 +1,230 @@
+package space.blockera.twofa.storage.mysql;
+
+import space.blockera.twofa.storage.StateCache;
+import space.blockera.twofa.storage.StorageExecutor;
+import space.blockera.twofa.storage.StorageUnavailableException;
+import space.blockera.twofa.storage.UuidCodec;
+import space.blockera.twofa.storage.UserRepository;
+
+import javax.sql.DataSource;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Logger;
+
+public class MysqlUserRepository implements UserRepository {
+    /** Строка twofa_users целиком: isEnabled, getSecret и getDrift обслуживаются одним запросом. */
+    private record UserState(boolean enabled, byte[] secret, int drift) { }
+    private static final UserState ABSENT = new UserState(false, null, 0);
+
+    private final DataSource ds;
+    private final DataSource bulk;
+    private final ReadRouter reads;
+    private final StorageExecutor io;
+    private final Logger log;
+    private final StateCache.Settings cacheSettings;
+    private final StateCache<UUID, UserState> cache;
+
+    /** @param bulk пул без предохранителя — для фоновой перешифровки, как у ExpiryJanitor */
+    public MysqlUserRepository(ReadRouter db, DataSource bulk, StorageExecutor io, StateCache.Settings cacheSettings, Logger log) {
+        this.ds = db.primary();
+        this.bulk = bulk;
+        this.reads = db;
+        this.io = io;
+        this.log = log;
+        this.cacheSettings = cacheSettings;
+        this.cache = new StateCache<>(cacheSettings.maxEntries());
+    }
+
+    @Override
+    public boolean isEnabled(UUID uuid) {
+        return load(uuid).enabled();
+    }
+
+    @Override
+    public Optional<byte[]> getSecret(UUID uuid) {
+        return Optional.ofNullable(load(uuid).secret());
+    }
+
+    @Override
+    public int getDrift(UUID uuid) {
+        return load(uuid).drift();
+    }
+
+    /** БД недоступна — последнее известное состояние из кэша, а без него StorageUnavailableException. */
+    private UserState load(UUID uuid) {
+        UserState cached = cache.get(uuid);
+        if (cached != null) return cached;
+        long stamp = cache.stamp(uuid);
+        String sql = "SELECT enabled, secret, totp_drift FROM twofa_users WHERE uuid=?";
+        try (Connection c = reads.read(uuid).getConnection(); PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setBytes(1, UuidCodec.toBytes(uuid));
+            try (ResultSet rs = ps.executeQuery()) {
+                UserState state = rs.next() ? new UserState(rs.getBoolean(1), rs.getBytes(2), rs.getInt(3)) : ABSENT;
+                cache.putIfFresh(uuid, state, stamp,
+                        state == ABSENT ? cacheSettings.negativeTtlMillis() : cacheSettings.ttlMillis());
+                return state;
+            }
+        } catch (SQLException e) {
+            if (!(e instanceof CircuitBreaker.OpenException)) log.warning("load twofa_users: " + e.getMessage());
+            UserState stale = cache.getStale(uuid);
+            if (stale == null) throw new StorageUnavailableException("twofa_users", e);
+            return stale;
+        }
+    }
+
+    /** Заполнить кэш строкой, прочитанной в pre-login (stamp снят до запроса). */
+    @Override
+    public void prime(UUID uuid, boolean enabled, byte[] secret, int drift, long stamp) {
+        boolean absent = !enabled && secret == null;
+        cache.putIfFresh(uuid, absent ? ABSENT : new UserState(enabled, secret, drift), stamp,
+                absent ? cacheSettings.negativeTtlMillis() : cacheSettings.ttlMillis());
+    }
+
+    @Override
+    public long cacheStamp(UUID uuid) {
+        return cache.stamp(uuid);
+    }
+
+    @Override
+    public StateCache.Stats cacheStats() {
+        return cache.stats();
+    }
+
+    @Override
+    public void upsertSecret(UUID uuid, byte[] secretBytes, boolean enabled) {
+        String sql = "INSERT INTO twofa_users(uuid, secret, enabled) VALUES(?,?,?) " +
+                "ON DUPLICATE KEY UPDATE secret=VALUES(secret), enabled=VALUES(enabled), totp_drift=0";
+        try (Connection c = ds.getConnection(); PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setBytes(1, UuidCodec.toBytes(uuid));
+            ps.setBytes(2, secretBytes);
+            ps.setBoolean(3, enabled);
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            log.warning("upsertSecret: " + e.getMessage());
+        } finally {
+            reads.wrote(uuid);
+            cache.invalidate(uuid);
+        }
+    }
+
+    @Override
+    public void setEnabled(UUID uuid, boolean enabled) {
+        String sql = "UPDATE twofa_users SET enabled=? WHERE uuid=?";
+        try (Connection c = ds.getConnection(); PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setBoolean(1, enabled);
+            ps.setBytes(2, UuidCodec.toBytes(uuid));
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            log.warning("setEnabled: " + e.getMessage());
+        } finally {
+            reads.wrote(uuid);
+            cache.invalidate(uuid);
+        }
+    }
+
+    @Override
+    public void setDrift(UUID uuid, int drift) {
+        int value = Math.max(Byte.MIN_VALUE, Math.min(Byte.MAX_VALUE, drift));
+        UserState cached = cache.get(uuid);
+        if (cached != null && cached.drift() == value) return;
+        String sql = "UPDATE twofa_users SET totp_drift=? WHERE uuid=?";
+        try (Connection c = ds.getConnection(); PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setInt(1, value);
+            ps.setBytes(2, UuidCodec.toBytes(uuid));
+            ps.executeUpdate();
+            // секрет и флаг не менялись — строку не перечитываем
+            cache.update(uuid, s -> s == ABSENT ? s : new UserState(s.enabled(), s.secret(), value));
+        } catch (SQLException e) {
+            log.warning("setDrift: " + e.getMessage());
+            cache.invalidate(uuid);
+        } finally {
+            reads.wrote(uuid);
+        }
+    }
+
+    @Override
+    public List<StoredSecret> secretsAfter(UUID after, int limit) {
+        String sql = "SELECT uuid, secret FROM twofa_users WHERE secret IS NOT NULL"
+                + (after != null ? " AND uuid > ?" : "") + " ORDER BY uuid LIMIT ?";
+        try (Connection c = bulk.getConnection(); PreparedStatement ps = c.prepareStatement(sql)) {
+            int i = 1;
+            if (after != null) ps.setBytes(i++, UuidCodec.toBytes(after));
+            ps.setInt(i, limit);
+            List<StoredSecret> out = new ArrayList<>(limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) out.add(new StoredSecret(UuidCodec.fromBytes(rs.getBytes(1)), rs.getBytes(2)));
+            }
+            return out;
+        } catch (SQLException e) {
+            throw new StorageUnavailableException("twofa_users", e);
+        }
+    }
+
+    @Override
+    public int rewriteSecrets(List<SecretRewrite> batch) {
+        if (batch.isEmpty()) return 0;
+        String sql = "UPDATE twofa_users SET secret=? WHERE uuid=? AND secret=?";
+        try (Connection c = bulk.getConnection()) {
+            c.setAutoCommit(false);
+            try (PreparedStatement ps = c.prepareStatement(sql)) {
+                for (SecretRewrite r : batch) {
+                    ps.setBytes(1, r.replacement());
+                    ps.setBytes(2, UuidCodec.toBytes(r.uuid()));
+                    ps.setBytes(3, r.expected());
+                    ps.addBatch();
+                }
+                int rewritten = 0;
+                for (int n : ps.executeBatch()) {
+                    if (n > 0 || n == Statement.SUCCESS_NO_INFO) rewritten++;
+                }
+                c.commit();
+                return rewritten;
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
+            } finally {
+                c.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new StorageUnavailableException("twofa_users", e);
+        } finally {
+            List<UUID> touched = new ArrayList<>(batch.size());
+            for (SecretRewrite r : batch) {
+                reads.wrote(r.uuid());
+                touched.add(r.uuid());
+            }
+            cache.invalidateAll(touched);
+        }
+    }
+
+    // ===== async =====
+
+    @Override
+    public CompletableFuture<Boolean> isEnabledAsync(UUID uuid) {
+        return io.supply(() -> isEnabled(uuid));
+    }
+
+    @Override
+    public CompletableFuture<Optional<byte[]>> getSecretAsync(UUID uuid) {
+        return io.supply(() -> getSecret(uuid));
+    }
+
+    @Override
+    public CompletableFuture<Void> upsertSecretAsync(UUID uuid, byte[] secretBytes, boolean enabled) {
+        return io.run(() -> upsertSecret(uuid, secretBytes, enabled));
+    }
+
+    @Override
+    public CompletableFuture<Void> setEnabledAsync(UUID uuid, boolean enabled) {
+        return io.run(() -> setEnabled(uuid, enabled));
+    }
+
+    @Override
+    public CompletableFuture<Void> setDriftAsync(UUID uuid, int drift) {
+        return io.run(() -> setDrift(uuid, drift));
+    }
+}
@@ -0,0 +1,66 @@
+package space.blockera.twofa.storage.mysql;
+
+import javax.sql.DataSource;
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Куда идёт чтение: на реплику (storage.replicas), а для игрока, который сам писал
+ * в последние read_your_writes_seconds, — на основную БД, чтобы не прочитать
+ * (и не положить в кэш) строку, до которой реплика ещё не догнала.
+ * Пока предохранитель реплик разомкнут, чтения тоже идут на основную.
+ */
+public class ReadRouter {
+    private static final int PRUNE_THRESHOLD = 4096;
+
+    private final DataSource primary;
+    private final DataSource replica;
+    private final CircuitBreaker replicaBreaker;
+    private final long windowMillis;
+    private final Map<UUID, Long> recentWrites = new ConcurrentHashMap<>();
+
+    /** @param replica null — реплик нет, всё идёт в основную БД */
+    public ReadRouter(DataSource primary, DataSource replica, CircuitBreaker replicaBreaker, long windowMillis) {
+        this.primary = primary;
+        this.replica = replica;
+        this.replicaBreaker = replicaBreaker;
+        this.windowMillis = windowMillis;
+    }
+
+    public DataSource primary() {
+        return primary;
+    }
+
+    public DataSource read(UUID uuid) {
+        return replica == null || replicaBreaker.isOpen() || wroteRecently(uuid) ? primary : replica;
+    }
+
+    /** Пачка игроков: если хоть один недавно писал, вся пачка читается с основной. */
+    public DataSource read(Collection<UUID> uuids) {
+        if (replica == null || replicaBreaker.isOpen()) return primary;
+        for (UUID uuid : uuids) {
+            if (wroteRecently(uuid)) return primary;
+        }
+        return replica;
+    }
+
+    /** Вызывается после записи строк игрока. */
+    public void wrote(UUID uuid) {
+        if (replica == null) return;
+        long now = System.currentTimeMillis();
+        recentWrites.put(uuid, now + windowMillis);
+        if (recentWrites.size() > PRUNE_THRESHOLD) {
+            recentWrites.values().removeIf(until -> until < now);
+        }
+    }
+
+    private boolean wroteRecently(UUID uuid) {
+        Long until = recentWrites.get(uuid);
+        if (until == null) return false;
+        if (until >= System.currentTimeMillis()) return true;
+        recentWrites.remove(uuid, until);
+        return false;
+    }
+}
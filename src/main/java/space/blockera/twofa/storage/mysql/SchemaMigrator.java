@@ -0,0 +1,233 @@
+package space.blockera.twofa.storage.mysql;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+/**
+ * Версионированные миграции схемы. Применённые версии и их контрольные суммы лежат
+ * в twofa_schema_version; если схема актуальна, запуск стоит один SELECT.
+ * Несколько серверов сети не применяют миграции одновременно — их разводит GET_LOCK.
+ */
+public class SchemaMigrator {
+
+    /** Один шаг миграции: SQL и, при необходимости, проверка, нужен ли он этой БД. */
+    public interface Step {
+        String sql();
+
+        default boolean applies(Connection c) throws SQLException {
+            return true;
+        }
+    }
+
+    public record Migration(int version, String description, List<Step> steps) {
+        public Migration(int version, String description, Step... steps) {
+            this(version, description, List.of(steps));
+        }
+
+        /** SHA-256 по описанию и тексту шагов: правка выпущенной миграции будет замечена. */
+        public String checksum() {
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                digest.update(description.getBytes(StandardCharsets.UTF_8));
+                for (Step step : steps) {
+                    digest.update((byte) 0);
+                    digest.update(step.sql().strip().getBytes(StandardCharsets.UTF_8));
+                }
+                return HexFormat.of().formatHex(digest.digest());
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private static final String LOCK_NAME = "blockera_twofa_schema";
+    private static final int LOCK_TIMEOUT_SECONDS = 30;
+
+    private final DataSource ds;
+    private final List<Migration> migrations;
+    private final Logger log;
+
+    public SchemaMigrator(DataSource ds, Logger log) {
+        this(ds, Migrations.ALL, log);
+    }
+
+    SchemaMigrator(DataSource ds, List<Migration> migrations, Logger log) {
+        this.ds = ds;
+        this.migrations = migrations;
+        this.log = log;
+    }
+
+    public static Step sql(String ddl) {
+        return () -> ddl;
+    }
+
+    /** ALTER TABLE ... ADD COLUMN только если колонки ещё нет (в MySQL нет ADD COLUMN IF NOT EXISTS). */
+    public static Step addColumn(String table, String column, String definition) {
+        return guarded("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition,
+                "SELECT 1 FROM INFORMATION_SCHEMA.COLUMNS " +
+                "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND COLUMN_NAME = ?",
+                table, column, false);
+    }
+
+    /** Вторичный индекс без блокировки записи (INPLACE, LOCK=NONE), только если его ещё нет. */
+    public static Step addIndex(String table, String index, String columns) {
+        return guarded("ALTER TABLE " + table + " ADD INDEX " + index + " (" + columns + "), ALGORITHM=INPLACE, LOCK=NONE",
+                INDEX_EXISTS, table, index, false);
+    }
+
+    /** DROP INDEX только если индекс есть: старые установки могли его не создавать. */
+    public static Step dropIndex(String table, String index) {
+        return guarded("ALTER TABLE " + table + " DROP INDEX " + index + ", ALGORITHM=INPLACE, LOCK=NONE",
+                INDEX_EXISTS, table, index, true);
+    }
+
+    private static final String INDEX_EXISTS = "SELECT 1 FROM INFORMATION_SCHEMA.STATISTICS " +
+            "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND INDEX_NAME = ?";
+
+    /** Шаг применяется, если объект name в table есть (whenExists) или его нет. */
+    private static Step guarded(String ddl, String existsSql, String table, String name, boolean whenExists) {
+        return new Step() {
+            @Override
+            public String sql() {
+                return ddl;
+            }
+
+            @Override
+            public boolean applies(Connection c) throws SQLException {
+                try (PreparedStatement ps = c.prepareStatement(existsSql)) {
+                    ps.setString(1, table);
+                    ps.setString(2, name);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        return rs.next() == whenExists;
+                    }
+                }
+            }
+        };
+    }
+
+    /** @return true, если схема актуальна (или успешно доведена до актуальной). */
+    public boolean migrate() {
+        try (Connection c = ds.getConnection()) {
+            Map<Integer, String> applied = readApplied(c);
+            if (applied != null && isCurrent(applied)) {
+                return verify(applied);
+            }
+            return migrateLocked(c);
+        } catch (SQLException e) {
+            log.severe("Миграция схемы не удалась: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean migrateLocked(Connection c) throws SQLException {
+        if (!acquireLock(c)) {
+            log.severe("Не удалось получить блокировку миграций за " + LOCK_TIMEOUT_SECONDS + " с");
+            return false;
+        }
+        try {
+            try (Statement st = c.createStatement()) {
+                st.execute("""
+                    CREATE TABLE IF NOT EXISTS twofa_schema_version (
+                      version INT PRIMARY KEY,
+                      description VARCHAR(200) NOT NULL,
+                      checksum CHAR(64) NOT NULL,
+                      applied_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+                    ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4""");
+            }
+            // другой сервер мог успеть, пока мы ждали блокировку
+            Map<Integer, String> applied = readApplied(c);
+            if (applied == null || !verify(applied)) return false;
+            for (Migration m : migrations) {
+                if (applied.containsKey(m.version())) continue;
+                apply(c, m);
+            }
+            return true;
+        } finally {
+            releaseLock(c);
+        }
+    }
+
+    private void apply(Connection c, Migration m) throws SQLException {
+        log.info("Схема: применяю миграцию " + m.version() + " (" + m.description() + ")");
+        try (Statement st = c.createStatement()) {
+            for (Step step : m.steps()) {
+                if (step.applies(c)) {
+                    st.execute(step.sql());
+                }
+            }
+        }
+        try (PreparedStatement ps = c.prepareStatement(
+                "INSERT INTO twofa_schema_version (version, description, checksum) VALUES (?, ?, ?)")) {
+            ps.setInt(1, m.version());
+            ps.setString(2, m.description());
+            ps.setString(3, m.checksum());
+            ps.executeUpdate();
+        }
+    }
+
+    /** @return версия → checksum, или null, если таблицы версий ещё нет. */
+    private Map<Integer, String> readApplied(Connection c) throws SQLException {
+        Map<Integer, String> applied = new TreeMap<>();
+        try (Statement st = c.createStatement();
+             ResultSet rs = st.executeQuery("SELECT version, checksum FROM twofa_schema_version")) {
+            while (rs.next()) {
+                applied.put(rs.getInt(1), rs.getString(2));
+            }
+            return applied;
+        } catch (SQLException e) {
+            if ("42S02".equals(e.getSQLState())) return null; // таблицы нет — первая установка или старая версия плагина
+            throw e;
+        }
+    }
+
+    private boolean isCurrent(Map<Integer, String> applied) {
+        for (Migration m : migrations) {
+            if (!applied.containsKey(m.version())) return false;
+        }
+        return true;
+    }
+
+    private boolean verify(Map<Integer, String> applied) {
+        boolean ok = true;
+        for (Migration m : migrations) {
+            String stored = applied.get(m.version());
+            if (stored != null && !stored.equalsIgnoreCase(m.checksum())) {
+                log.severe("Схема: контрольная сумма миграции " + m.version() + " не совпадает с применённой — "
+                        + "новые миграции не применяются, проверьте twofa_schema_version");
+                ok = false;
+            }
+        }
+        return ok;
+    }
+
+    private static boolean acquireLock(Connection c) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+            ps.setString(1, LOCK_NAME);
+            ps.setInt(2, LOCK_TIMEOUT_SECONDS);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getInt(1) == 1;
+            }
+        }
+    }
+
+    private void releaseLock(Connection c) {
+        try (PreparedStatement ps = c.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            ps.setString(1, LOCK_NAME);
+            ps.executeQuery().close();
+        } catch (SQLException e) {
+            log.warning("RELEASE_LOCK: " + e.getMessage());
+        }
+    }
+}
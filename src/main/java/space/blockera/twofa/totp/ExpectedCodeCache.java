@@ -0,0 +1,159 @@
+package space.blockera.twofa.totp;
+
+import org.bukkit.configuration.file.FileConfiguration;
+import space.blockera.twofa.security.CryptoUtil;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Заранее посчитанные коды для игроков, которым показан запрос 2FA: секрет расшифровывается
+ * в I/O-пуле, коды шагов от «текущий − window» до «через precompute_seconds + window» лежат
+ * в слоте игрока. /2fa confirm сравнивает код с окном слота за постоянное время —
+ * без БД, AES и HMAC. Слот обнуляется при истечении (sweep раз в секунду), успешной
+ * проверке и смене секрета.
+ */
+public class ExpectedCodeCache {
+
+    public enum Result { MATCH, MISMATCH, UNKNOWN }
+
+    /** @param offset при MATCH — сдвиг шага относительно текущего, как TotpService.matchOffset */
+    public record Check(Result result, int offset) {
+        private static final Check MISMATCH = new Check(Result.MISMATCH, 0);
+        private static final Check UNKNOWN = new Check(Result.UNKNOWN, 0);
+    }
+
+    private static final class Slot {
+        final long firstStep;
+        final long expiresAt;
+        final int[] codes;
+        boolean cleared;
+
+        Slot(long firstStep, long expiresAt, int[] codes) {
+            this.firstStep = firstStep;
+            this.expiresAt = expiresAt;
+            this.codes = codes;
+        }
+
+        synchronized void clear() {
+            cleared = true;
+            Arrays.fill(codes, 0);
+        }
+    }
+
+    private final TotpService totp;
+    private final CryptoUtil crypto;
+    private final long ttlMillis;
+    private static final int STRIPES = 1024;
+
+    private final Map<UUID, Slot> slots = new ConcurrentHashMap<>();
+    /**
+     * Счётчики discard по полосам хеша UUID: подготовка, начатая до discard этого игрока,
+     * свой слот уже не кладёт, а выход других игроков её не сбрасывает.
+     */
+    private final AtomicLongArray discards = new AtomicLongArray(STRIPES);
+
+    public ExpectedCodeCache(TotpService totp, CryptoUtil crypto, FileConfiguration cfg) {
+        this.totp = totp;
+        this.crypto = crypto;
+        this.ttlMillis = Math.max(0L, cfg.getLong("security.totp.precompute_seconds", 120L)) * 1000L;
+    }
+
+    /**
+     * Посчитать коды, когда придёт секрет; выполняется в потоке, завершившем secret (I/O-пул).
+     * Ошибки чтения и расшифровки не важны: /2fa confirm тогда проверит код обычным путём.
+     */
+    public void prepare(UUID uuid, CompletableFuture<Optional<byte[]>> secret) {
+        if (ttlMillis <= 0) return;
+        int stripe = stripe(uuid);
+        long stamp = discards.get(stripe);
+        secret.thenAccept(enc -> {
+            if (enc.isEmpty()) return;
+            int window = totp.windowSteps();
+            long ahead = (ttlMillis / 1000L + totp.periodSeconds() - 1) / totp.periodSeconds();
+            long firstStep = totp.currentStep() - window;
+            int[] codes = new int[(int) (2L * window + 1 + ahead)];
+            if (!totp.fillCodes(crypto.reveal(enc.get()), firstStep, codes)) return;
+            Slot slot = new Slot(firstStep, System.currentTimeMillis() + ttlMillis, codes);
+            synchronized (this) {
+                if (discards.get(stripe) != stamp) {
+                    slot.clear();
+                    return;
+                }
+                Slot previous = slots.put(uuid, slot);
+                if (previous != null) previous.clear();
+            }
+        }).exceptionally(ex -> null);
+    }
+
+    /**
+     * Сравнить код со слотом. Сравниваются все шаги окна, без раннего выхода.
+     * @return UNKNOWN — слота нет, он истёк или уже не покрывает окно: проверять обычным путём
+     */
+    public Check check(UUID uuid, String code) {
+        Slot slot = slots.get(uuid);
+        if (slot == null) return Check.UNKNOWN;
+        if (slot.expiresAt <= System.currentTimeMillis()) {
+            remove(uuid, slot);
+            return Check.UNKNOWN;
+        }
+        long current = totp.currentStep();
+        int window = totp.windowSteps();
+        long from = current - window - slot.firstStep;
+        long to = current + window - slot.firstStep;
+        if (from < 0 || to >= slot.codes.length) return Check.UNKNOWN;
+        int provided = totp.parseCode(code);
+        if (provided < 0) return Check.MISMATCH;
+
+        int match = 0;
+        int matchedAt = 0;
+        synchronized (slot) {
+            if (slot.cleared) return Check.UNKNOWN;
+            for (int i = (int) from; i <= (int) to; i++) {
+                // оба числа неотрицательны: XOR == 0 только при совпадении, (0 - 1) >>> 31 == 1
+                int hit = ((slot.codes[i] ^ provided) - 1) >>> 31;
+                match |= hit;
+                matchedAt = (-hit & i) | ((hit - 1) & matchedAt);
+            }
+        }
+        if (match == 0) return Check.MISMATCH;
+        remove(uuid, slot);
+        return new Check(Result.MATCH, (int) (slot.firstStep + matchedAt - current));
+    }
+
+    /** Выход игрока, новый секрет или отключение 2FA. */
+    public void discard(UUID uuid) {
+        synchronized (this) {
+            discards.incrementAndGet(stripe(uuid));
+            Slot slot = slots.remove(uuid);
+            if (slot != null) slot.clear();
+        }
+    }
+
+    /** Обнулить истёкшие слоты игроков, так и не вводивших /2fa confirm; асинхронный таймер. */
+    public void sweep() {
+        long now = System.currentTimeMillis();
+        slots.forEach((uuid, slot) -> {
+            if (slot.expiresAt <= now) remove(uuid, slot);
+        });
+    }
+
+    /** Все слоты — при замене кэша на /2fa reload. */
+    public void clearAll() {
+        slots.forEach(this::remove);
+    }
+
+    private void remove(UUID uuid, Slot slot) {
+        if (slots.remove(uuid, slot)) slot.clear();
+    }
+
+    private static int stripe(UUID uuid) {
+        int h = uuid.hashCode();
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+}
@@ -6,13 +6,45 @@ import org.bukkit.configuration.file.FileConfiguration;
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
 import java.net.URLEncoder;
-import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
 import java.security.SecureRandom;
-import java.time.Instant;
+import java.util.Arrays;
 import java.util.Locale;
 
 public class TotpService {
+    private static final String HMAC = "HmacSHA1";
+    /** 10^digits; больше 9 цифр в int не помещается. */
+    private static final int[] POW10 = {1, 10, 100, 1_000, 10_000, 100_000, 1_000_000, 10_000_000, 100_000_000, 1_000_000_000};
+    /** Самый длинный секрет, который принимаем (наши — 20 байт). */
+    private static final int MAX_KEY_BYTES = 128;
+
+    /**
+     * Рабочие буферы потока I/O-пула: HMAC, счётчик шага, результат и ключ.
+     * На проверку кода создаётся только SecretKeySpec (Mac.init требует Key).
+     */
+    private static final class Scratch {
+        final Mac mac;
+        final byte[] counter = new byte[8];
+        final byte[] hash;
+        final byte[] key = new byte[MAX_KEY_BYTES];
+
+        Scratch() {
+            try {
+                this.mac = Mac.getInstance(HMAC);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(HMAC + " недоступен", e);
+            }
+            this.hash = new byte[mac.getMacLength()];
+        }
+    }
+
+    /** {@link #matchOffset}: код не совпал ни на одном шаге окна. */
+    public static final int NO_MATCH = Integer.MIN_VALUE;
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
     private final String issuer;
     private final int digits;
     private final int periodSeconds;
@@ -22,7 +54,7 @@ public class TotpService {
 
     public TotpService(FileConfiguration cfg) {
         this.issuer = cfg.getString("security.totp.issuer", "BlockEra");
-        this.digits = cfg.getInt("security.totp.digits", 6);
+        this.digits = Math.max(1, Math.min(POW10.length - 1, cfg.getInt("security.totp.digits", 6)));
         this.periodSeconds = cfg.getInt("security.totp.period_seconds", 30);
         this.window = cfg.getInt("security.totp.window_steps", 1);
     }
@@ -34,26 +66,105 @@ public class TotpService {
     }
 
     public boolean verifyCode(String base32Secret, String code) {
-        if (code == null || !code.matches("\\d{" + digits + "}")) return false;
+        return matchOffset(base32Secret, code, 0) != NO_MATCH;
+    }
+
+    /**
+     * Сдвиг шага (-window..+window), на котором код совпал, или {@link #NO_MATCH}.
+     * Первым считается likelyOffset (последний сдвиг часов игрока), дальше соседние: +1, −1, +2, −2…
+     * Секрет декодируется и HMAC инициализируется один раз на проверку, а не на каждый шаг окна.
+     */
+    public int matchOffset(String base32Secret, String code, int likelyOffset) {
+        int provided = parseCode(code);
+        if (provided < 0) return NO_MATCH;
+        Scratch s = keyed(base32Secret);
+        if (s == null) return NO_MATCH;
+        long currentInterval = currentStep();
+        int start = clampOffset(likelyOffset);
+        for (int d = 0; d <= 2 * window; d++) {
+            int later = start + d;
+            if (later <= window && generateCode(s, currentInterval + later) == provided) return later;
+            int earlier = start - d;
+            if (d > 0 && earlier >= -window && generateCode(s, currentInterval + earlier) == provided) return earlier;
+        }
+        return NO_MATCH;
+    }
+
+    /** Сдвиг в пределах текущего окна (window_steps могли уменьшить после сохранения). */
+    public int clampOffset(int offset) {
+        return Math.max(-window, Math.min(window, offset));
+    }
+
+    /**
+     * Коды шагов firstStep, firstStep + 1, … — по одному на элемент out.
+     * @return false, если секрет не декодируется
+     */
+    public boolean fillCodes(String base32Secret, long firstStep, int[] out) {
+        Scratch s = keyed(base32Secret);
+        if (s == null) return false;
+        for (int i = 0; i < out.length; i++) {
+            out[i] = generateCode(s, firstStep + i);
+        }
+        return true;
+    }
+
+    public long currentStep() {
+        return System.currentTimeMillis() / 1000L / periodSeconds;
+    }
+
+    public int periodSeconds() {
+        return periodSeconds;
+    }
+
+    public int windowSteps() {
+        return window;
+    }
+
+    /** HMAC потока, инициализированный секретом; null — секрет не декодируется. */
+    private static Scratch keyed(String base32Secret) {
+        if (base32Secret == null) return null;
+        Scratch s = SCRATCH.get();
+        int keyLength = decodeBase32(base32Secret, s.key);
+        if (keyLength <= 0) {
+            Arrays.fill(s.key, (byte) 0);
+            return null;
+        }
         try {
-            int provided = Integer.parseInt(code);
-            long currentInterval = Instant.now().getEpochSecond() / periodSeconds;
-            for (int i = -window; i <= window; i++) {
-                int expected = generateCode(base32Secret, currentInterval + i);
-                if (expected == provided) return true;
-            }
-        } catch (Exception ignored) {}
-        return false;
+            s.mac.init(new SecretKeySpec(s.key, 0, keyLength, HMAC));
+            return s;
+        } catch (InvalidKeyException e) {
+            return null;
+        } finally {
+            Arrays.fill(s.key, 0, keyLength, (byte) 0);
+        }
     }
 
-    private int generateCode(String base32Secret, long interval) throws Exception {
-        byte[] keyBytes = new Base32().decode(base32Secret);
-        SecretKeySpec keySpec = new SecretKeySpec(keyBytes, "HmacSHA1");
-        Mac mac = Mac.getInstance("HmacSHA1");
-        mac.init(keySpec);
+    /** @return код как число или -1, если это не ровно digits цифр. */
+    public int parseCode(String code) {
+        if (code == null || code.length() != digits) return -1;
+        int value = 0;
+        for (int i = 0; i < digits; i++) {
+            int d = code.charAt(i) - '0';
+            if (d < 0 || d > 9) return -1;
+            value = value * 10 + d;
+        }
+        return value;
+    }
 
-        byte[] data = ByteBuffer.allocate(8).putLong(interval).array();
-        byte[] hash = mac.doFinal(data);
+    /** RFC 4226: HMAC(счётчик) → динамическое усечение; mac уже инициализирован ключом. */
+    private int generateCode(Scratch s, long interval) {
+        byte[] counter = s.counter;
+        for (int i = 7; i >= 0; i--) {
+            counter[i] = (byte) interval;
+            interval >>>= 8;
+        }
+        byte[] hash = s.hash;
+        try {
+            s.mac.update(counter, 0, counter.length);
+            s.mac.doFinal(hash, 0);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
 
         int offset = hash[hash.length - 1] & 0xF;
         int binary =
@@ -62,8 +173,34 @@ public class TotpService {
                 ((hash[offset + 2] & 0xFF) << 8) |
                 (hash[offset + 3] & 0xFF);
 
-        int otp = binary % (int) Math.pow(10, digits);
-        return otp;
+        return binary % POW10[digits];
+    }
+
+    /**
+     * Base32 (RFC 4648, регистр не важен, '=' и пробелы пропускаются) прямо в out.
+     * @return число байт или -1, если символ недопустим или ключ длиннее out
+     */
+    private static int decodeBase32(String s, byte[] out) {
+        int buffer = 0;
+        int bits = 0;
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            int v;
+            if (ch >= 'A' && ch <= 'Z') v = ch - 'A';
+            else if (ch >= 'a' && ch <= 'z') v = ch - 'a';
+            else if (ch >= '2' && ch <= '7') v = ch - '2' + 26;
+            else if (ch == '=' || ch == ' ') continue;
+            else return -1;
+            buffer = (buffer << 5) | v;
+            bits += 5;
+            if (bits >= 8) {
+                if (length == out.length) return -1;
+                bits -= 8;
+                out[length++] = (byte) (buffer >>> bits);
+            }
+        }
+        return length;
     }
 
     public String buildOtpAuthUri(String accountName, String base32Secret) {
@@ -0,0 +1,71 @@
+package space.blockera.twofa.session;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SessionSnapshotStoreTest {
+    private static final Logger LOG = Logger.getLogger("SessionSnapshotStoreTest");
+    private static final String IP = "203.0.113.7";
+
+    @TempDir
+    Path dir;
+
+    /** Плагин выключается раньше, чем игроков кикает: все онлайн-игроки попадают в снимок подтверждёнными. */
+    @Test
+    void restoredSnapshotDoesNotVerify() {
+        UUID verified = UUID.randomUUID();
+        UUID trusted = UUID.randomUUID();
+        SessionService before = withCooldowns();
+        SessionSnapshotStore store = store();
+        store.load(before);
+        before.markVerified(verified, IP);
+        before.markTrusted(trusted);
+        assertTrue(before.isVerified(verified));
+        store.close(before);
+
+        SessionService after = withCooldowns();
+        store().load(after);
+        assertFalse(after.isVerified(verified));
+        assertFalse(after.isVerified(trusted));
+        // кулдаун по IP при этом сохраняется
+        assertTrue(after.isWithinCooldown(verified, IP, null));
+        assertFalse(after.isWithinCooldown(verified, "198.51.100.1", null));
+    }
+
+    /** Сервер упал: снимка при выключении нет, состояние только в журнале. */
+    @Test
+    void replayedJournalDoesNotVerify() {
+        UUID uuid = UUID.randomUUID();
+        SessionService before = withCooldowns();
+        SessionSnapshotStore store = store();
+        store.load(before);
+        before.markVerified(uuid, IP);
+        store.flush(before);
+
+        SessionService after = withCooldowns();
+        store().load(after);
+        assertFalse(after.isVerified(uuid));
+        assertTrue(after.isWithinCooldown(uuid, IP, null));
+    }
+
+    private SessionSnapshotStore store() {
+        return new SessionSnapshotStore(dir.resolve("sessions.bin"), 1000L, LOG);
+    }
+
+    private static SessionService withCooldowns() {
+        YamlConfiguration cfg = new YamlConfiguration();
+        cfg.set("session.expire_minutes", 120);
+        cfg.set("policy.cooldown.enabled", true);
+        cfg.set("policy.cooldown.default.minutes", 60);
+        cfg.set("policy.cooldown.default.per_ip", true);
+        return new SessionService(cfg);
+    }
+}